@@ -43,6 +43,8 @@ sub audioCongratsDir     {fpd(assetsDir,   audioCongratsFolder)}
 sub appPackage           {domainReversed.  q(.photoapp)}                        # App package name
 sub jpxTileSize          {256}                                                  # Size of jpx tiles
 sub jpxTilesMax          {4}                                                    # Maximum number of jpx tiles in either direction. Larger images are scaled down first to meet this requirement.  This prevents the creation of huge apps that crash when played.
+sub jpxPacked            {1}                                                    # Pack the jpx tiles of each image into a single file that the app can memory map
+sub jpxPyramid           {1}                                                    # Also pack each image at successively halved resolutions so that small images on screen decode fewer bytes - requires jpxPacked
 sub maxImageSize         {1024}                                                 # Maximum size of normal images - otherwise Android runs out of memory
 sub maxImageSizeGH       {1024*1024}                                            # Maximum size of an image on GitHub via GitHub::Crud.pm
 sub minimumImageFileSize {1e3}                                                  # Minimum size of an image file - suspect that something has gone wrong if it is smaller then this number of bytes
@@ -72,6 +74,8 @@ sub sourceJavaFiles      {map{fpe(sourceJava, @$_, q(java))}
   [qw(photoBytes           PhotoBytes          )],
   [qw(photoBytes           PhotoBytesJP        )],
   [qw(photoBytes           PhotoBytesJpx       )],
+  [qw(photoBytes           PhotoBytesJpxPacked )],
+  [qw(photoBytes           PhotoBytesPyramid   )],
 # [qw(prompts              Prompts             )],
   [qw(randomChoice         RandomChoice        )],
   [qw(rightWrongTracker    RightWrongTracker   )],
@@ -154,9 +158,46 @@ sub convertImages(@)
     my $target = swapFilePrefix $source, imagesLocal, imagesApp;
     my $t      = setFileExtension $target;
     convertImageToJpx($source, $t, jpxTileSize, jpxTilesMax);                   # Convert image to jpx
+    packJpx($t) if jpxPacked;                                                   # Pack the tiles into one file
+    pyramidJpx($t) if jpxPacked and jpxPyramid;                                 # Pack the lower resolution levels
    }
  }
 
+sub pyramidJpx($)                                                               # Pack a jpx image at successively halved resolutions as jpx2.pack, jpx4.pack, ... until a level fits in one tile
+ {my ($folder) = @_;                                                            # Folder containing the jpx image
+  my %d = map {split /\s+/, $_, 2} split /\n/, readFile(fpe($folder, qw(jpx data))); # Manifest
+  my ($s, $w, $h, $source) = @d{qw(size width height source)};
+  for(my $f = 2; $w > $s * $f / 2 or $h > $s * $f / 2; $f *= 2)                 # Until the previous level fits in one tile
+   {my $W = int(($w + $f - 1) / $f);                                            # Dimensions of this level
+    my $H = int(($h + $f - 1) / $f);
+    my $i = temporaryFile;
+    my $c = qq(convert ).quoteFile($source).qq( -resize ${W}x${H}! jpg:$i);
+    lll $_ for qx($c 2>&1);
+    my $l = temporaryFolder;
+    convertImageToJpx($i, $l, $s);                                              # Tile this level
+    packJpx($l);
+    copyBinaryFile(fpe($l, qw(jpx pack)), fpe($folder, qq(jpx$f), q(pack)));
+    clearFolder($l, 1e3);
+    unlink $i;
+   }
+ }
+
+sub packJpx($)                                                                  # Pack the tiles of a jpx image into jpx.pack: a header of big endian integers: JPXP, version, width, height, size, X, Y, then the offset of each tile and of the end of the last tile, then the tiles
+ {my ($folder) = @_;                                                            # Folder containing the jpx image
+  my %d = map {split /\s+/, $_, 2} split /\n/, readFile(fpe($folder, qw(jpx data))); # Manifest
+  my ($s, $w, $h) = @d{qw(size width height)};
+  my $X = int($w/$s); ++$X if $w % $s;                                          # Image size in tiles
+  my $Y = int($h/$s); ++$Y if $h % $s;
+  my @t = map {my $y = $_; map {fpe($folder, qq(${y}_$_), q(jpg))} 1..$X} 1..$Y;# Tiles in row order
+  my @b = map {readBinaryFile($_)} @t;
+  my @o = (4 * (7 + @t + 1));                                                   # Offset of first tile is after the header and the offsets
+  push @o, $o[-1] + length($_) for @b;                                          # Offset of each subsequent tile and the end
+  my $p = fpe($folder, qw(jpx pack));
+  unlink $p;
+  writeBinaryFile($p, pack(q(a4 N*), q(JPXP), 1, $w, $h, $s, $X, $Y, @o).join '', @b);
+  unlink @t;                                                                    # The tiles are now in the pack
+ }
+
 sub copyMusic()                                                                 # Copy midi to assets
  {lll "Copy music";
   makePath(midiAssetsDir);
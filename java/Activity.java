@@ -16,6 +16,7 @@ import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.PointF;
 import android.graphics.RadialGradient;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Shader;
 import android.net.ConnectivityManager;
@@ -60,6 +61,7 @@ import java.util.TreeSet;
 public class Activity extends android.app.Activity                              // The activity thrust upon the user
  {final static private String  sourceVersion = "20201111";                      // Source code version
   final static private boolean showLoopTime  = false;                           // Log the loop time if true
+  final static private int     prefetchPhotos = 3;                              // Number of photos likely to be in the next question to decode while the student looks at a response
   final static public  long    storageLimit  = 1024*1024*1024;                  // Limit the amount of space occupied by downloaded zip files
   final static public  double
     autoPlayWait           = 30,                                                // Start auto play of the student does not respond in this many seconds
@@ -82,13 +84,16 @@ public class Activity extends android.app.Activity
   final static long
     waitForAppState        =  100,                                              // Number of milliseconds between polls for AppState to be constructed
     waitForAutoPlay        = 5000,                                              // Number of milliseconds between checks for auto play mode
-    waitForDisplay         =  100;                                              // Number of milliseconds between polls for the display to start
+    waitForDisplay         =  100,                                              // Number of milliseconds between polls for the display to start
+    minFrameTime           =   16,                                              // Minimum number of milliseconds between frames while the display is changing which caps the frame rate at about 60 frames per second
+    idleRedrawTime         = 1000;                                              // Maximum number of milliseconds between frames while the display is idle so that changes made without requesting a redraw, such as new log entries, still appear
   private static Svg chooseFlag = null;                                         // Draw flags to choose language to check for
   private Svg
     lastDrawnSvg = null;                                                        // The last Svg drawn an this the one that gets motion events delivered to it
   private static com.appaapps.Log log;                                          // Logging
   private static Display display;                                               // The display
   private static Svg svgQuestion, svgResponse, svgLogo, svgPageMenu;            // Svgs to display question, response, logo
+  private PhotoBytes.Prefetch prefetch;                                         // Photos being decoded ahead of the next question
   private static String                                                         // Initial app details
     appName,                                                                    // Name of the app which is also the second part of the repository name on GitHub
     appPath,                                                                    // Path of the app which is the third and last components of the repository name on GitHub
@@ -254,11 +259,20 @@ public class Activity extends android.app.Activity
 
     Fourier.speedMultiplier(totalTime() / warmUpSecs);                          // Bring the Fourier patterns up to speed through the warm up period
 
+    final Svg oldQuestion = svgQuestion, oldResponse = svgResponse;             // Svgs about to be replaced
+    if (oldQuestion != null) oldQuestion.cancelPrepares();                      // Drop any decoding still queued for photos that will not now be shown so that the new photos are decoded first
+    if (oldResponse != null) oldResponse.cancelPrepares();
+
     final Point size = display.size;                                            // Finalize the size
     final Svg S      = svgQuestion = lastQuestion.svg(size.x, size.y);          // Show question choices
+    cancelPrefetch();                                                           // The new question has taken what it needed from the prefetch
+    if (appState.speakerMode) prefetchNextPhotos();                             // Decode the adjacent page while the student looks at this one
     svgResponse      = null;                                                    // No response now we have a question to show
     lastResponse     = null;                                                    // No response now we have a question to show
 
+    Svg.discard(oldQuestion);                                                   // Return the bitmaps of the replaced Svgs to the bitmap pool once they are no longer being drawn
+    if (oldResponse != oldQuestion) Svg.discard(oldResponse);
+
     S.setTheme(currentTheme);                                                   // Set the current pattern for the Svg elements that use a pattern
 
     S.userTapped(new Runnable()                                                 // Student has tapped
@@ -283,11 +297,15 @@ public class Activity extends android.app.Activity
              {final AppState.Question.Response r = lastResponse = q.response(p);// Create the response to the user's choice
               if (r != null)                                                    // No response required if no response returned
                {final Svg s = svgResponse = r.svg(size.x, size.y);              // Create response Svg
+                prefetchNextPhotos();                                           // Decode the likely photos of the next question while the student looks at the response
                 s.setTheme(currentTheme);                                       // Set the current pattern for the Svg elements that use a pattern
                 s.userTapped(new Runnable()                                     // Terminate the response when the user taps the display
                  {public void run()
                    {if (r.mark != AppState.Mark.wrong) newQuestion();           // Create a new question if the use is right or we have given up - continue if they are merely wrong
-                    else svgResponse = null;                                    // Finished with response
+                    else                                                        // Finished with response
+                     {svgResponse = null;
+                      Svg.discard(s);                                           // Return its bitmaps to the bitmap pool
+                     }
                    }
                  });
                 addStandardCompassRoseCmds(s);                                  // Add the standard commands to the response Svg
@@ -300,6 +318,7 @@ public class Activity extends android.app.Activity
        }
      });
     addStandardCompassRoseCmds(S);                                              // Add the standard commands to the question Svg
+    Svg.requestRedraw();                                                        // Show the new question even if the display is idle
    }
 
   void addStandardCompassRoseCmds                                               //M Add the standard commands to an Svg
@@ -376,7 +395,12 @@ public class Activity extends android.app.Activity
            }
          });
        }
-      addSayAgainCmd(s, 6);                                                     // Say it again
+      if (appState != null && appState.speakerMode &&                           // Page through the photos in speaker mode
+          appState.speakerPages() > 1)
+       {addSpeakerPageCmd(s, translate("next"), 5,  1);
+        addSpeakerPageCmd(s, translate("back"), 6, -1);
+       }
+      else addSayAgainCmd(s, 6);                                                // Say it again
       s.setCompassRoseCmd(translate("send"), 7, new Runnable()                  // Email
        {public void run()
          {createEmail();
@@ -468,6 +492,21 @@ public class Activity extends android.app.Activity
      });
    }
 
+  public void addSpeakerPageCmd                                                 // Add a command to turn the page in speaker mode
+   (final Svg svg,                                                              // Svg to add the command to
+    final String name,                                                          // Name of the command
+    final int cmdNumber,                                                        // Command number
+    final int by)                                                               // Number of pages to move by
+   {svg.setCompassRoseCmd(name, cmdNumber, new Runnable()
+     {public void run()
+       {final AppState a = appState;
+        if (a == null) return;
+        a.turnSpeakerPage(by);
+        newQuestion();                                                          // Show the new page - only its photos are decoded
+       }
+     });
+   }
+
   public void autoPlayer()                                                      // Play the game for the student if they do not respond - call this as an app starts to play
    {lastResponseTime = Time.secs();                                             // Reset the last response time when the app starts to play so that we did not get an immediate push that was really destined for the previous app
     if (autoPlayerStarted) return;                                              // Only one autoplayer
@@ -524,12 +563,33 @@ public class Activity extends android.app.Activity
        size = null;                                                             // Current screen dimensions if known
     final Paint paint = new Paint();
     ShowPress showPress = null;
+    private boolean idle = false;                                               // Whether the display was idle after the last frame
+    int idleToActive = 0, activeToIdle = 0;                                     // Number of times the display has changed mode
+    private final Rect dirty = new Rect();                                      // Region of the display being drawn
+    private boolean fullFrame = true;                                           // Draw the whole display on the next frame
+    private int logChanges = -1;                                                // Changes to the log when it was last drawn
+    long fullFrames = 0, partialFrames = 0, skippedFrames = 0;                  // Frames drawn in full, frames drawn in part, frames not drawn because nothing had changed
 
     final Runnable runnable = new Runnable()                                    // Drawing thread
      {public void run()
        {while(!stop)                                                            // Draw while a surface is available
          {try
-           {if (draw) draw(); else SystemClock.sleep(100);                      // Draw as fast as possible
+           {if (!draw) {SystemClock.sleep(100); continue;}                      // No surface yet
+            final long seen = Svg.redrawRequests(),                             // Requests made while drawing will cause another frame
+                      start = SystemClock.uptimeMillis();
+            draw();
+            final boolean active = active();
+            if (active == idle)                                                 // Mode change
+             {if (active) ++idleToActive; else ++activeToIdle;
+              idle = !active;
+             }
+            if (active)                                                         // Cap the frame rate while the display is changing
+             {final long w = start + minFrameTime - SystemClock.uptimeMillis();
+              if (w > 0) SystemClock.sleep(w);
+             }
+            else if (!Svg.awaitRedrawRequest(seen, idleRedrawTime))             // Wait for input or a change of state while idle
+             {fullFrame = true;                                                 // Draw everything now and again in case something changed without requesting a redraw
+             }
            }
           catch(Exception e)
            {say(e);
@@ -574,6 +634,14 @@ public class Activity extends android.app.Activity
 
     void startDrawing()                                                         //M Set the drawing flag so that we start to draw from within the display loop
      {draw = true;
+      fullFrame = true;                                                         // The surface is new
+      Svg.requestRedraw();
+     }
+
+    boolean active()                                                            //M Whether the display would change if it were drawn again without any further input
+     {final Svg question = svgQuestion, response = svgResponse;
+      final Svg s = response != null ? response : question;
+      return showPress != null || s != null && s.animating();
      }
 
     void stopDrawing()                                                          // Stop drawing by ending the display loop
@@ -587,6 +655,7 @@ public class Activity extends android.app.Activity
      {final float x = m.getX(), y = m.getY();
       lastResponseTime = Time.secs();                                           // Update last response time
       lastPressWasAutoPlayer = false;                                           // Touch came from the student not the autoplayer
+      Svg.requestRedraw();                                                      // Wake the display if it is idle
       switch (m.getActionMasked())
        {case MotionEvent.ACTION_DOWN:   return pointerPressed (x, y);
         case MotionEvent.ACTION_UP:
@@ -627,19 +696,30 @@ public class Activity extends android.app.Activity
 
     void draw()                                                                 //M Draw
      {long startTime = System.currentTimeMillis();
+      Svg.releaseDiscarded();                                                   // Release the bitmaps of Svgs that will not be drawn again
       final Svg question = svgQuestion, response = svgResponse;
+      final double frameTime = Time.secs();                                     // Read the clock once per frame so that everything drawn in this frame agrees on the time
+      final Svg s = response != null ? response : question;                     // Svg to draw
+      final Point z = size;                                                     // Size of the canvas on the last frame
+      final int log = com.appaapps.Log.changes();
+      final boolean full = fullFrame || z == null || s == null ||               // Draw the whole display if it might all have changed
+        showPress != null || displayLog && log != logChanges;
+      fullFrame  = false;
+      logChanges = log;
+      if (!full && !s.dirtyRegion(z.x, z.y, frameTime, dirty))                  // Nothing has changed
+       {++skippedFrames;
+        return;
+       }
+      if (full) ++fullFrames; else ++partialFrames;
 
       synchronized (vsh)
-       {final Canvas canvas = vsh.lockCanvas();
+       {final Canvas canvas = full ? vsh.lockCanvas() : vsh.lockCanvas(dirty);  // The surface keeps the rest of the last frame and might enlarge the dirty region
         try
          {if (canvas == null) {size = null; return;}                            // Record the last size of the canvas
           if (size == null) size = new Point();
           size.set(canvas.getWidth(), canvas.getHeight());                      // Show size of screen
-          if (response != null)
-           {lastDrawnSvg = response.draw(canvas);                               // Draw response
-           }
-          else if (question != null)
-           {lastDrawnSvg = question.draw(canvas);                               // Draw question
+          if (s != null)
+           {lastDrawnSvg = s.draw(canvas, frameTime, full ? null : dirty);      // Draw response or question
            }
           if (displayLog)                                                       // Display the log if requestedor we are the super user
            {com.appaapps.Log.showLog(canvas, paint);
@@ -682,6 +762,7 @@ public class Activity extends android.app.Activity
       final float y,                                                            //P Y coordinate to press
       final boolean tapToContinue)                                              //P True - response, false - question
      {showPress = new ShowPress(x, y);
+      Svg.requestRedraw();                                                      // Wake the display to show the press
       if (tapToContinue)                                                        // Prompt the user - but not too often
        {if (tapToContinueIssued++ < maxPrompts)
          {prompt("Tap anywhere to continue");
@@ -999,6 +1080,13 @@ public class Activity extends android.app.Activity
 "<tr><td>userid                 <td>"+userid                           +"\n"+
 "<tr><td>waitForAppState        <td>"+waitForAppState                  +"\n"+
 "<tr><td>waitForDisplay         <td>"+waitForDisplay                   +"\n"+
+"<tr><td>minFrameTime           <td>"+minFrameTime                     +"\n"+
+"<tr><td>idleRedrawTime         <td>"+idleRedrawTime                   +"\n"+
+"<tr><td>display idle to active <td>"+(display != null ? display.idleToActive : 0)+"\n"+
+"<tr><td>display active to idle <td>"+(display != null ? display.activeToIdle : 0)+"\n"+
+"<tr><td>display full frames    <td>"+(display != null ? display.fullFrames    : 0)+"\n"+
+"<tr><td>display partial frames <td>"+(display != null ? display.partialFrames : 0)+"\n"+
+"<tr><td>display skipped frames <td>"+(display != null ? display.skippedFrames : 0)+"\n"+
 "<tr><td>warmUpSecs             <td>"+warmUpSecs                       +"\n"+
 "</table>"                                                             +"\n";
  }
@@ -1020,6 +1108,27 @@ public class Activity extends android.app.Activity
     return 0;                                                                   // No sound played
    }
 
+  private void prefetchNextPhotos()                                             //M Decode the photos likely to be in the next question at low priority within half the bitmap cache
+   {final AppState a = appState;
+    if (a == null) return;
+    cancelPrefetch();
+    final Point z = display.size;                                               // Size of the drawing area the next question will be laid out in
+    if (z == null) return;
+    final Stack<PhotoBytes> p = new Stack<PhotoBytes>();
+    final int k = a.speakerMode ? a.speakerPageSize : prefetchPhotos;           // A whole page in speaker mode
+    for(AppState.Photo photo: a.likelyNextPhotos(k))
+     {if (photo.bitmap != null) p.push(photo.bitmap);
+     }
+    prefetch = new PhotoBytes.Prefetch
+     (p, a.likelyNextImages(z.x, z.y), PhotoBytes.bitmapCache.limit() / 2);
+   }
+
+  private void cancelPrefetch()                                                 //M Stop any prefetch still in progress
+   {final PhotoBytes.Prefetch p = prefetch;
+    prefetch = null;
+    if (p != null) p.cancel();
+   }
+
   private static void say(Object...o)                                           // Log a message
    {com.appaapps.Log.say(o);
    }
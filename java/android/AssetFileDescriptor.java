@@ -0,0 +1,17 @@
+//------------------------------------------------------------------------------
+// Asset file descriptor
+// Philip R Brenan at gmail dot com, Appa Apps Ltd, 2020
+//------------------------------------------------------------------------------
+package android.content.res;
+import java.io.FileDescriptor;
+
+public class AssetFileDescriptor
+ {public FileDescriptor getFileDescriptor() {return null;}
+  public long getStartOffset() {return 0;}
+  public long getLength() {return 0;}
+  public void close() {}
+
+  public static void main(String[] args)
+   {System.err.println("Hello World");
+   }
+ }
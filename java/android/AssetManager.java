@@ -0,0 +1,11 @@
+//------------------------------------------------------------------------------
+// Asset manager
+// Philip R Brenan at gmail dot com, Appa Apps Ltd, 2020
+//------------------------------------------------------------------------------
+package android.content.res;
+
+public class AssetManager
+ {public static void main(String[] args)
+   {System.err.println("Hello World");
+   }
+ }
@@ -13,6 +13,8 @@ public class Bitmap
    }
   public final int getWidth () {return width;}
   public final int getHeight() {return height;}
+  public Config config = Config.ARGB_8888;
+  public final int getByteCount() {return (config == Config.RGB_565 ? 2 : 4) * width * height;}
   public static Bitmap createBitmap(int width, int height, Object config)
    {final Bitmap b = new Bitmap();
     b.width  = width;
@@ -20,8 +22,10 @@ public class Bitmap
     return b;
    }
   public void setPixel(int a,int b,int c) {}
+  public final boolean isMutable() {return true;}
+  public final Config getConfig() {return config;}
   public enum Config
-   {ARGB_8888;
+   {ARGB_8888, RGB_565;
    }
 
   public void eraseColor(int a) {};
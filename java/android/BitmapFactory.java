@@ -3,9 +3,22 @@
 // Philip R Brenan at gmail dot com, Appa Apps Ltd, 2017
 //------------------------------------------------------------------------------
 package android.graphics;
+import java.io.InputStream;
 
 public class BitmapFactory
- {public static Bitmap decodeByteArray(byte[] data, int offset, int length)
+ {public static class Options
+   {public int inSampleSize;
+    public Bitmap inBitmap;
+    public boolean inMutable;
+    public Bitmap.Config inPreferredConfig;
+   }
+  public static Bitmap decodeByteArray(byte[] data, int offset, int length)
+   {return new Bitmap();
+   }
+  public static Bitmap decodeByteArray(byte[] data, int offset, int length, Options opts)
+   {return new Bitmap();
+   }
+  public static Bitmap decodeStream(InputStream is, Rect outPadding, Options opts)
    {return new Bitmap();
    }
 
@@ -21,6 +21,7 @@ public class BitmapShader
    }
 
   public BitmapShader(Bitmap c, Shader.TileMode a, Shader.TileMode b) {}
+  public void setLocalMatrix(Matrix m) {}
 
   public static void main(String[] args)
    {System.err.println("Hello World");
@@ -38,11 +38,16 @@ public class Canvas
   public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {}
   public void drawText(String a,int b ,int c,Paint d) {}
   public void drawText(String a,float b , float c,Paint d) {}
+  public void drawText(String a,int b, int c, float d, float e,Paint f) {}
   public void rotate(float a) {}
   public void drawPath(Path a,Paint b) {}
   public void save() {}
   public void restore() {}
   public void clipRect(RectF a) {}
+  public boolean getClipBounds(Rect bounds)
+   {bounds.left = 0; bounds.top = 0; bounds.right = getWidth(); bounds.bottom = getHeight();
+    return true;
+   }
   public void translate(float a,float b) {}
   public void scale(float a,float b)  {}
   public void scale(float a,float b, float c, float d)  {}
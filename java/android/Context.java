@@ -3,14 +3,21 @@
 // Philip R Brenan at gmail dot com, Appa Apps Ltd, 2017
 //------------------------------------------------------------------------------
 package android.content;
+import android.content.res.AssetFileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 
 public class Context
- {public class FileList
+ {public static final int MODE_PRIVATE = 0;
+  public class FileList
    {public String [] list(String folder) {return new String[0];}
     public InputStream open(String folder) {return null;}
+    public AssetFileDescriptor openFd(String file) {return new AssetFileDescriptor();}
    }
   public FileList getAssets() {return new FileList();}
+  public FileInputStream openFileInput(String file) {return null;}
+  public FileOutputStream openFileOutput(String file, int mode) {return null;}
 
   public static void main(String[] args)
    {System.err.println("Hello World");
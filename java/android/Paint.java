@@ -2,11 +2,26 @@ package android.graphics;
 public class Paint
   {public void setAlpha(int a) {}
    public void setStyle(int a) {}
-   public void setColor(int a) {}
+   private int color;
+   public void setColor(int a) {color = a;}
    public void setDither(boolean a) {}
    public void setStrokeWidth(float w) {}
-   public float measureText(String text) {return 0f;}
-   public void setTextSize(float w) {}
+   private float textSize = 12;
+   public float measureText(String text)
+    {float w = 0;
+     for(int i = 0; i < text.length(); ++i) w += advance(text.charAt(i));
+     return w;
+    }
+   public int getTextWidths(String text, float[] widths)
+    {for(int i = 0; i < text.length(); ++i) widths[i] = advance(text.charAt(i));
+     return text.length();
+    }
+   private float advance(char c) {return textSize * (c == ' ' ? 0.25f : c < 'a' ? 0.65f : 0.5f);}
+   public void setTextSize(float w) {textSize = w;}
+   public float getTextSize() {return textSize;}
+   private Typeface typeface;
+   public Typeface getTypeface() {return typeface;}
+   public Typeface setTypeface(Typeface t) {return typeface = t;}
    public void set(Paint p) {}
    public class Style
     {public static final int FILL = 0, FILL_AND_STROKE = 1, STROKE = 2;
@@ -16,7 +31,7 @@ public class Paint
    public void setShader(LinearGradient a) {}
    public void setShader(BitmapShader a) {}
    public Path getTextPath(String a,int b,int c,int d,int e,Path p) {return null;}
-   public int getColor() {return  0;}
+   public int getColor() {return color;}
    public float descent() {return 0f;}
 ;
 
@@ -24,13 +24,13 @@ public boolean   contains(int x, int y) {return true;}
 public int   describeContents()    {return 0;}
 public boolean   equals(Object o)  {return true;}
 public int   hashCode()            {return 0;}
-public int   height()              {return 0;}
+public int   height()              {return bottom - top;}
 public void  inset(int dx, int dy)  {}
 public boolean   intersect(Rect r)       {return true;}
 public boolean   intersect(int left, int top, int right, int bottom){return true;}
 public boolean   intersects(int left, int top, int right, int bottom) {return true;}
 public static boolean  intersects(Rect a, Rect b)  {return true;}
-public boolean   isEmpty()    {return true;}
+public boolean   isEmpty()    {return left >= right || top >= bottom;}
 public void  offset(int dx, int dy) {}
 public void  offsetTo(int newLeft, int newTop) {}
 // public void  readFromParcel(Parcel in)  {}
@@ -38,7 +38,9 @@ public void  offsetTo(int newLeft, int newTop) {}
 // public void  roundOut(Rect dst){}
 public void  set(Rect src)  {}
 // public void  set(Rect src) {}
-public void  set(int left, int top, int right, int bottom){}
+public void  set(int left, int top, int right, int bottom)
+ {this.left = left; this.top = top; this.right = right; this.bottom = bottom;
+ }
 public void  setEmpty()  {}
 public boolean   setIntersect(Rect a, Rect b)  {return true;}
 public void  sort() {}
@@ -47,7 +49,7 @@ public String  toString() {return "";}
 public void  union(Rect r) {}
 public void  union(int left, int top, int right, int bottom){}
 public void  union(int x, int y) {}
-public int   width() {return 0;}
+public int   width() {return right - left;}
 // public void  writeToParcel(Parcel out, int flags)
 
    public static void main(String[] args)
@@ -22,15 +22,21 @@ public class RectF
 public boolean   contains(RectF r) {return true;}
 public boolean   contains(float x, float y) {return true;}
 public int       describeContents()    {return 0;}
-public boolean   equals(Object o)  {return true;}
+public boolean   equals(Object o)
+ {if (!(o instanceof RectF)) return false;
+  final RectF r = (RectF)o;
+  return left == r.left && top == r.top && right == r.right && bottom == r.bottom;
+ }
 public int       hashCode()            {return 0;}
 public float     height()            {return bottom -top;}
 public void      inset(float dx, float dy)  {}
 public boolean   intersect(RectF r)       {return true;}
 public boolean   intersect(float left, float top, float right, float bottom){return true;}
 public boolean   intersects(float left, float top, float right, float bottom) {return true;}
-public static boolean  intersects(RectF a, RectF b)  {return true;}
-public boolean   isEmpty()    {return true;}
+public static boolean  intersects(RectF a, RectF b)
+ {return a.left < b.right && b.left < a.right && a.top < b.bottom && b.top < a.bottom;
+ }
+public boolean   isEmpty()    {return left >= right || top >= bottom;}
 public void      offset(float dx, float dy) {}
 public void      offsetTo(float newLeft, float newTop) {}
 // public void  readFromParcel(Parcel in)  {}
@@ -43,14 +49,23 @@ public void  set(RectF src)
   this.bottom = src.bottom;
  }
 // public void  set(Rect src) {}
-public void  set(float left, float top, float right, float bottom){}
-public void  setEmpty()  {}
+public void  set(float left, float top, float right, float bottom)
+ {this.left = left; this.top = top; this.right = right; this.bottom = bottom;
+ }
+public void  setEmpty()  {left = top = right = bottom = 0;}
 public boolean   setIntersect(RectF a, RectF b)  {return true;}
 public void  sort() {}
 public String  toShortString() {return "";}
 public String  toString() {return "("+left+","+top+","+right+","+bottom+")";}
-public void  union(RectF r) {}
-public void  union(float left, float top, float right, float bottom){}
+public void  union(RectF r) {union(r.left, r.top, r.right, r.bottom);}
+public void  union(float left, float top, float right, float bottom)
+ {if (left >= right || top >= bottom) return;
+  if (isEmpty()) {set(left, top, right, bottom); return;}
+  this.left   = Math.min(this.left,   left);
+  this.top    = Math.min(this.top,    top);
+  this.right  = Math.max(this.right,  right);
+  this.bottom = Math.max(this.bottom, bottom);
+ }
 public void  union(float x, float y) {}
 public float   width() {return right-left;}
 // public void  writeToParcel(Parcel out, int flags)
@@ -6,6 +6,7 @@ package android.os;
 
 public class SystemClock
  {public static void sleep(long a) {}
+  public static long uptimeMillis() {return System.nanoTime() / 1000000;}
 
   public static void main(String[] args)
    {System.err.println("Hello World");
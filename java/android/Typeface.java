@@ -0,0 +1,4 @@
+package android.graphics;
+public class Typeface
+ {public static final Typeface DEFAULT = new Typeface();
+ }
@@ -76,6 +76,7 @@ public class AppState
     numberOfTimesAQuestionMustBeAnsweredCorrectlyToSeeNewFact = 2,              // How often the student must get a question right first time to see more information
     racesRightInARowForBoost = 3,                                               // If the student enters race mode three time in a row without a single intervening wrong answer they get a 50% performance boost.
     rightInARowToEnterRaceMode,                                                 // Must get at least this number of questions right in a row to enter race mode - comes from sourceFile.txt app.rightInARow= - set in sourceFile.txt
+    speakerPageSize        = 12,                                                // Number of photos on each page of the speaker mode grid - only the photos on the page being shown are decoded
     swingLimitMinimum      = 1,                                                 // Minimum swing limit - wrong answers can be passed over for a long time
     wrongInARowNarrowFocus = 3;                                                 // Narrow the focus if wrong this many times in a row
   public final boolean
@@ -97,6 +98,8 @@ public class AppState
     racesRightInARow = 0,                                                       // How many races the student has entered without making a single mistake
     rightInARowOverAll,                                                         // The number of questions the user has got right in a row - we use this to decrease the swing limit of users exhibiting more competence
     screenShotNumber = 0,                                                       // Indexes the screenshots in screenshot mode
+    speakerPage = 0,                                                            // The page of photos being shown in speaker mode
+    speakerPageStep = 1,                                                        // The direction the student last moved through the pages so that the page they are likely to see next can be prefetched
     wrongInARowOverAll;                                                         // The number of questions the user has got wrong in a row - we use this to increase the swing limit of users exhibiting less competence
   public enum Mark                                                              // How we mark the user's choice - would be better in Question but Java is deficient in the matter of internal enums
    {wrong, rightFirstTime, rightAfterWrong, giveUp
@@ -166,7 +169,7 @@ public class AppState
       unpacked.app.wrongRight;
 
     maximumNumberOfImagesToShow = speakerMode ?                                 // Maximum number of images to show
-      unpacked.photos.size() :                                                  // All the photos
+      Math.min(unpacked.photos.size(), speakerPageSize) :                       // One page of the photos
       convertStringToInteger(unpacked.app.maxImages, 6);                        // As supplied by the user or a sensible default
 
     numberOfImagesToShow = speakerMode ?                                        // Number of images to show
@@ -260,6 +263,18 @@ public class AppState
 
 //  sizeAtEachLevel = sizeAtEachLevel();                                        // Number of photos available at each level of the game
 //  levels          = Math.max(1, sizeAtEachLevel.length);                      // Highest level in the game - at least 1
+
+    warmTextLayouts();                                                          // Lay out the titles before they are needed
+   }
+
+  public Thread warmTextLayouts()                                               //M Lay out the title of every photo and fact on a background thread so that building the Svgs that show them finds their layouts already computed
+   {final Stack<String> t = new Stack<String>();
+    for(Photo p : photos)
+     {t.push(p.title);
+      t.push(p.photoCmd.aFewChars);
+     }
+    for(Fact f : facts) t.push(f.title);
+    return Svg.TextLayouts.warm(t);
    }
 
 //private int[]sizeAtEachLevel()                                                //M Total size of game at each level as measured by the total number of photos available at each level
@@ -426,6 +441,18 @@ public class AppState
     "<tr><td>wrongInARowNarrowFocus                                      <td>"+wrongInARowNarrowFocus                                   +"\n"+
     "<tr><td>wrongInARowOverAll                                          <td>"+wrongInARowOverAll                                       +"\n"+
     "</table>\n");
+
+    s.append                                                                    // Memory used by decoded photos
+     ("<h2>Decoded photo bytes</h2>\n<p><table cellspacing=20>"+
+      "<tr><th>Photo<th>Bytes decoded<th>High quality\n");
+    for(Photo p: photos)
+     {s.append("<tr><td>"+p.title+"<td>"+p.bitmap.decodedBytes()+
+               "<td>"+p.bitmap.highQuality+"\n");
+     }
+    s.append("<tr><td>Total<td>"+PhotoBytes.totalDecodedBytes()+"<td>\n"+
+             "</table>\n");
+    s.append("<h2>Text raster cache</h2>\n<p>"+                                 // Effectiveness of drawing text from bitmaps
+             Svg.textRasterStatistics()+"\n");
     return s.toString();
    }
 
@@ -510,7 +537,18 @@ public class AppState
      (final AppDescription.Photo photoCmd)                                      //P Photo details from unpacked zip file
      {super("photo", photoCmd.name, photoCmd.title);
       this.photoCmd = photoCmd;
-      bitmap = new PhotoBytesJpx(Assets.files, photoCmd.name);
+      final String pack = photoCmd.name+"/jpx.pack";                            // Tiles packed into one file
+      if (Assets.catalog.contains(PhotoBytesPyramid.level(photoCmd.name, 1)))   // Packed at several resolutions
+       {bitmap = new PhotoBytesPyramid
+         (Assets.withPrefix(photoCmd.name+"/"), photoCmd.name);
+       }
+      else if (Assets.catalog.contains(pack))                                   // Memory map the packed tiles
+       {bitmap = new PhotoBytesJpxPacked(pack);
+       }
+      else                                                                      // Only the files in the folder for this photo - the tiles are loaded when the photo is shown
+       {bitmap = new PhotoBytesJpx
+         (Assets.withPrefix(photoCmd.name+"/"), photoCmd.name, true);
+       }
      }
 
     public Fact findSimilarFact                                                 //M Chose a fact for this photo which matches the aspect of the specified fact if possible
@@ -717,6 +755,78 @@ public class AppState
     return null;
    }
 
+  public Stack<Photo> likelyNextPhotos                                          //M The photos most likely to be the answer to the next question in order of decreasing likelihood so that they can be decoded while the student is still looking at the current response
+   (final int k)                                                                //P Maximum number of photos to return
+   {final Stack<Photo> s = new Stack<Photo>();
+    if (congratulations) return s;                                              // The next question will be a congratulation
+    if (speakerMode)                                                            // The next page of photos
+     {for(Photo p: speakerPagePhotos(speakerPage + speakerPageStep))
+       {if (s.size() < k) s.push(p);
+       }
+      return s;
+     }
+
+    final Stack<PhotoFact> c = new Stack<PhotoFact>();                          // Candidates in order
+    if (raceMode && raceCourse.size() > 0)                                      // The race course fixes the order of the questions
+     {c.addAll(raceCourse);
+     }
+    else                                                                        // The least understood questions as chosen by chooseNextQuestion()
+     {final OrderedStack<PhotoFact> possibilities =
+        new OrderedStack<PhotoFact>()
+         {public int compare() {return a.compare(b);}
+         };
+      for(PhotoFact q : photoFacts)
+       {if (!photoFactFilter.contains(q)) possibilities.put(q);                 // Skip recently seen photo facts
+       }
+      c.addAll(possibilities.asStack());
+     }
+
+    for(PhotoFact q : c)                                                        // Distinct photos in order
+     {if (s.size() >= k) break;
+      if (q.photo != null && !s.contains(q.photo)) s.push(q.photo);
+     }
+    return s;
+   }
+
+  public int speakerPages()                                                     //M Number of pages of photos in speaker mode
+   {return Math.max(1, (photos.size() + speakerPageSize - 1) / speakerPageSize);
+   }
+
+  public Stack<Photo> speakerPagePhotos                                         //M The photos on a page in speaker mode in source file order
+   (final int page)                                                             //P Page number - wraps around
+   {final int n = speakerPages(), p = (page % n + n) % n;
+    final Stack<Photo> s = new Stack<Photo>();
+    for(int i = p * speakerPageSize; i < photos.size() && s.size() < speakerPageSize; ++i)
+     {s.push(photos.elementAt(i));
+     }
+    return s;
+   }
+
+  public int turnSpeakerPage                                                    //M Move to another page of photos in speaker mode and return the new page number
+   (final int by)                                                               //P Number of pages to move forward, negative to move back
+   {final int n = speakerPages();
+    if (by != 0) speakerPageStep = by > 0 ? 1 : -1;
+    return speakerPage = ((speakerPage + by) % n + n) % n;
+   }
+
+  public int likelyNextImages                                                   //M The number of cells in the grid the next question is likely to be laid out in by the same Choices layout as Question.svg() so that photos can be prefetched at the sample size, and so under the cache keys, the next question will use
+   (final int width,                                                            //P Approximate width of the drawing area
+    final int height)                                                           //P Approximate height of the drawing area
+   {final int n = photos.size();
+    final int nImages = speakerMode ?
+      speakerPagePhotos(speakerPage + speakerPageStep).size() :                 // The page being prefetched which might be the short last page
+      Math.min(n, raceMode ?
+        Math.min(Math.max(2, level), numberOfImagesToShow) : numberOfImagesToShow);
+    final Stack<Photo> p = likelyNextPhotos(nImages);
+    final float[] aspectRatios = new float[p.size()];
+    for(int i = 0; i < aspectRatios.length; ++i)
+     {aspectRatios[i] = p.elementAt(i).aspectRatio();
+     }
+    final Choices layout = new Choices
+      (width, height, nImages, speakerMode, aspectRatios);
+    return layout.nx * layout.ny;                                               // Question.svg() prepares each image with the size of the grid
+   }
+
   public void changeLevel()                                                     //M Change level if there is a broad swing up or down
    {if (!changeLevelUp()) changeLevelDown();                                    // Try to change up or down
    }
@@ -889,9 +999,9 @@ public class AppState
       new RandomChoice<Photo>().shuffle(choices);                               // Shuffle the choices to broaden the range of question alternates actually seen
       choices.add(0, currentQuestion.photo);                                    // The answer photo must be first - its display position will be randomized later
 
-      if (speakerMode)                                                          // In speaker mode just use all the photos
+      if (speakerMode)                                                          // In speaker mode just use the photos on the current page
        {choices.clear();
-        for(Photo photo : photos) choices.push(photo);
+        choices.addAll(speakerPagePhotos(speakerPage));
         AppState.this.numberOfImagesToShow = choices.size();
        }
 //    say("Race= "+raceMode, " level= "+level, " images= "+minimumNumberOfImagesToShow);
@@ -1182,7 +1292,7 @@ public class AppState
          }
        }
       svg.setBackGroundColour(backGroundColour);                                // Set the back ground colour
-      svg.waitForPreparesToFinish();
+      svg.waitForPreviewsToFinish();                                            // Show the question as soon as the previews are ready
       return svg;
      }
 
@@ -1476,7 +1586,7 @@ public class AppState
           displayed.push(new Tile(currentQuestion.photo, re));
          }
         svg.setBackGroundColour(backGroundColour);                              // Set the back ground colour
-        svg.waitForPreparesToFinish();
+        svg.waitForPreviewsToFinish();                                          // Show the response as soon as the previews are ready
         return svg;
        }
       public void playWrongAnswer()                                             // Play the wrong part of wrong/right
@@ -1528,7 +1638,46 @@ public class AppState
    }
 
   public static void main(String[] args)                                        // Test
-   {
+   {testSpeakerPages();
+   }
+
+  static AppState testApp                                                       //M An app of square photos
+   (final int     n,                                                            //P Number of photos
+    final boolean speaker)                                                      //P Speaker mode
+   {final AppDescription d = new AppDescription();
+    final AppDescription.App a = d.new App();
+    a.name = "test";
+    if (speaker) a.speaker = "yes";
+    for(int i = 0; i < n; ++i)
+     {final AppDescription.Photo p = d.new Photo();
+      p.name  = "photo"+i;
+      p.title = "photo "+i;
+      p.width = p.height = 100;
+     }
+    return new AppState(d);
+   }
+
+  static void testSpeakerPages()                                                // Speaker mode pages wrap around in both directions and the last page might be short
+   {final AppState o = testApp(5, true);                                        // One page
+    assert o.speakerPages() == 1;
+    assert o.speakerPagePhotos(-1).size() == 5 && o.speakerPagePhotos(1).size() == 5;
+    assert o.turnSpeakerPage(-1) == 0 && o.speakerPageStep == -1;
+    assert o.turnSpeakerPage( 1) == 0 && o.speakerPageStep ==  1;
+
+    final AppState s = testApp(25, true);                                       // Pages of 12, 12 and 1
+    assert s.speakerPages() == 3;
+    assert s.speakerPagePhotos(0).size() == 12;
+    assert s.speakerPagePhotos(2).size() ==  1;                                 // Short last page
+    assert s.speakerPagePhotos(2).firstElement() == s.photos.elementAt(24);
+    assert s.speakerPagePhotos(3).firstElement() == s.photos.elementAt( 0);     // Wraps forward
+    assert s.speakerPagePhotos(-1).size() == 1;                                 // Wraps back
+
+    assert s.turnSpeakerPage( 1) == 1 && s.speakerPageStep ==  1;
+    assert s.likelyNextImages(1200, 900) == 1;                                  // The short last page is next rather than a page the size of this one
+    assert s.turnSpeakerPage(-2) == 2 && s.speakerPageStep == -1;               // Back past the first page
+    assert s.turnSpeakerPage( 0) == 2 && s.speakerPageStep == -1;               // Staying put keeps the direction
+    assert s.likelyNextImages(1200, 900) == 12;                                 // Back to a full page in a 4 by 3 grid
+    assert s.turnSpeakerPage(-5) == 0;                                          // Several times round
    }
 
   static void say(Object...O) {Log.say(O);}
@@ -8,10 +8,13 @@ import android.content.Context;
 
 import java.io.InputStream;
 import java.io.FileOutputStream;
+import java.util.SortedSet;
 import java.util.Stack;
+import java.util.TreeSet;
 
 public class Assets                                                             //C Assets
  {public final static Stack<String> files = new Stack<String>();                // Files in assets
+  public final static TreeSet<String> catalog = new TreeSet<String>();          // Files in assets in sorted order so that we can find all the files in a folder with one range query
   public       static Context context;                                          // Context
 
   public static void load                                                       //M Load asset file names
@@ -27,6 +30,12 @@ public class Assets
        }
      }
     catch (Exception e) {}
+    catalog.addAll(files);                                                      // Index the file names once
+   }
+
+  public static SortedSet<String> withPrefix                                    //M The asset files whose names start with the specified prefix in sorted order in O(log(number of assets))
+   (final String prefix)                                                        //P Prefix
+   {return catalog.subSet(prefix, prefix + Character.MAX_VALUE);                // All the names between the prefix and the prefix followed by the highest possible character
    }
 
   public static String copyAssetsFileToRealFile                                 //M Copy an asset sound file to a proper file that can be used by the media player.
@@ -86,7 +95,15 @@ public class Assets
    }
 
   public static void main(String[] args)                                        //m Test
-   {System.out.println("Hello World\n");
+   {for(String s: new String[]{"images/b/jpx.data", "images/a/1_1.jpg",
+      "images/a", "images/a/jpx.data", "images/ab/1_1.jpg", "midi/right/a.mid"})
+     {catalog.add(s);
+     }
+    assert withPrefix("images/a/").toString().equals("[images/a/1_1.jpg, images/a/jpx.data]");
+    assert withPrefix("images/").size() == 5;
+    assert withPrefix("midi/right").first().equals("midi/right/a.mid");
+    assert withPrefix("sounds").isEmpty();
+    System.out.println("Hello World\n");
    }
 
   private static void say(Object...o)                                           // Log a message
@@ -0,0 +1,89 @@
+//------------------------------------------------------------------------------
+// Benchmark the evaluation of Fourier streams
+// Philip R Brenan at gmail dot com, Appa Apps Ltd, 2020
+//------------------------------------------------------------------------------
+package com.appaapps;
+
+import java.util.Stack;
+
+public class FourierBenchmark                                                   //C Measure the cost of a call to Fourier.get() against the Stack of Impulses evaluated with Math.sin that it replaced - run main()
+ {final static int
+    streams    = 5,                                                             // Streams evaluated per element per frame by the waves theme
+    frames     = 1000,                                                          // Frames evaluated by each operation
+    warmUps    = 200,                                                           // Operations run before measuring so that the code has been compiled
+    operations = 2000;                                                          // Operations measured
+  static double sink = 0;                                                       // Results are summed here so that the evaluations cannot be optimized away
+
+  static class Before                                                           //C The previous evaluation: a Stack of Impulses each summed through Math.sin on every call
+   {final float speed;                                                          // Speed of the stream
+    final Stack<Impulse> impulses = new Stack<Impulse>();                       // Impulses to run
+
+    class Impulse                                                               //C A sine wave
+     {final float amplitude, frequency;
+      Impulse(final float amplitude, final float frequency)
+       {this.amplitude = amplitude;
+        this.frequency = frequency;
+       }
+     } //C Impulse
+
+    Before                                                                      //c The same impulses as a Fourier stream
+     (final Fourier f,                                                          //P Fourier stream
+      final float   speed)                                                      //P Speed the stream was created with
+     {this.speed = speed;
+      for(int i = 0; i < f.amplitudes.length; ++i)
+       {impulses.push(new Impulse(f.amplitudes[i], f.frequencies[i]));
+       }
+     }
+
+    float get                                                                   //M Get the value at the specified time
+     (final double secs)                                                        //P Time in seconds
+     {double s = 0;
+      for(Impulse i: impulses)
+       {final double
+          t = secs / 60d / 12d,
+          v = Math.sin(2 * Math.PI * i.frequency * t * speed),
+          w = i.amplitude * v * v;
+        s += w;
+       }
+      return (float)s;
+     }
+   } //C Before
+
+  public static void main(String[] args)                                        //m Report the latency of evaluating the streams of one element over many frames before and after
+   {final Fourier[] after  = new Fourier[streams];
+    final Before [] before = new Before [streams];
+    for(int i = 0; i < streams; ++i)
+     {after [i] = new Fourier(1f);
+      before[i] = new Before(after[i], 1f);
+     }
+    final double start = Time.secs();
+
+    final PhotoBenchmark.Benchmark b = new PhotoBenchmark.Benchmark
+     ("fourier before "+streams+"x"+frames)
+     {void run()
+       {for  (int j = 0; j < frames; ++j)
+         {for(Before f: before) sink += f.get(start + j / 60d);
+         }
+       }
+     };
+
+    final PhotoBenchmark.Benchmark a = new PhotoBenchmark.Benchmark
+     ("fourier after  "+streams+"x"+frames)
+     {void run()
+       {for  (int j = 0; j < frames; ++j)
+         {for(Fourier f: after) sink += f.get(start + j / 60d);
+         }
+       }
+     };
+
+    for(PhotoBenchmark.Benchmark m: new PhotoBenchmark.Benchmark[]{b, a})
+     {final long s = System.nanoTime();
+      say(m.measure(warmUps, operations));
+      say(String.format("%-32s %12.1f ns/call", m.name,
+        (System.nanoTime() - s) / (double)(warmUps + operations) / streams / frames));
+     }
+    if (sink == 0) say("");                                                     // Use the results
+   }
+
+  static void say(Object...O) {Say.say(O);}
+ } //C FourierBenchmark
@@ -0,0 +1,190 @@
+//------------------------------------------------------------------------------
+// Benchmark the photo decode pipeline against the android stubs
+// Philip R Brenan at gmail dot com, Appa Apps Ltd, 2020
+//------------------------------------------------------------------------------
+package com.appaapps;
+
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Stack;
+import java.util.TreeSet;
+
+public class PhotoBenchmark                                                     //C Measure the construction, loading, preparation and drawing of jpx photos in synthetic apps so that regressions in the image path are caught before a build ships - run main() against the android stubs
+ {final static int
+    tileSize   = 256,                                                           // Size of each synthetic tile
+    warmUps    =  20,                                                           // Operations run before measuring so that the code has been compiled
+    operations = 200;                                                           // Operations measured
+  final static File root = new File                                             // Synthetic asset trees
+   (System.getProperty("java.io.tmpdir"), "photoBenchmark");
+
+  abstract static class Benchmark                                               //C An operation to be measured
+   {final String name;                                                          // Name of the operation and its parameters
+    Benchmark(final String name) {this.name = name;}
+    void setUp() {}                                                             //M Called before each operation outside the measurement
+    abstract void run();                                                        //M The operation to measure
+
+    String measure                                                              //M Run the operation repeatedly and report throughput, latency percentiles and bytes allocated per operation
+     (final int warmUps,                                                        //P Operations before measuring
+      final int operations)                                                     //P Operations to measure
+     {for(int i = 0; i < warmUps; ++i) {setUp(); run();}
+      final long[] t = new long[operations];                                    // Latency of each operation in nanoseconds
+      long total = 0, allocated = 0;
+      for(int i = 0; i < operations; ++i)
+       {setUp();
+        final long a = allocatedBytes(), s = System.nanoTime();
+        run();
+        t[i] = System.nanoTime() - s;
+        allocated += allocatedBytes() - a;
+        total += t[i];
+       }
+      Arrays.sort(t);
+      return String.format
+       ("%-32s %12.1f ops/s  p50 %10.1f us  p90 %10.1f us  p99 %10.1f us  %12d bytes/op",
+        name, operations * 1e9 / total,
+        percentile(t, 50) / 1e3, percentile(t, 90) / 1e3, percentile(t, 99) / 1e3,
+        allocated / operations);
+     }
+   } //C Benchmark
+
+  static long percentile                                                        //M Percentile of sorted latencies
+   (final long[] t,                                                             //P Sorted latencies
+    final int    p)                                                             //P Percentile
+   {return t[Math.min(t.length - 1, t.length * p / 100)];
+   }
+
+  static long allocatedBytes()                                                  //M Bytes allocated so far by all live threads including the decode threads, or zero if the virtual machine cannot say
+   {try
+     {final com.sun.management.ThreadMXBean m =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+      long n = 0;
+      for(long b: m.getThreadAllocatedBytes(m.getAllThreadIds())) if (b > 0) n += b;
+      return n;
+     }
+    catch(Throwable e)                                                          // Not a HotSpot virtual machine
+     {return 0;
+     }
+   }
+
+  static String photo                                                           //M Create a synthetic jpx photo of X by Y tiles and return the name of its folder
+   (final String  name,                                                         //P Name of the folder under the root
+    final int     X,                                                            //P Tiles in X
+    final int     Y,                                                            //P Tiles in Y
+    final boolean tiles)                                                        //P Write the tiles as well as the manifest
+   {final File f = new File(root, name);
+    f.mkdirs();
+    write(new File(f, "jpx.data"), ("version 1\ntype    jpx\nsize    "+tileSize+
+      "\nsource  synthetic\nwidth   "+X*tileSize+"\nheight  "+Y*tileSize+"\n").getBytes());
+    if (tiles)
+     {final byte[] b = new byte[16 * 1024];                                     // About the size of a jpg tile
+      b[0] = (byte)0xff; b[1] = (byte)0xd8;
+      for  (int j = 1; j <= Y; ++j)
+       {for(int i = 1; i <= X; ++i) write(new File(f, j+"_"+i+".jpg"), b);
+       }
+     }
+    return f.getPath();
+   }
+
+  static void write                                                             //M Write bytes to a file unless it already exists
+   (final File   file,                                                          //P File
+    final byte[] bytes)                                                         //P Bytes
+   {if (file.exists()) return;
+    try
+     {final FileOutputStream o = new FileOutputStream(file);
+      o.write(bytes);
+      o.close();
+     }
+    catch(Exception e)
+     {say("Cannot write file: "+file);
+      e.printStackTrace();
+     }
+   }
+
+  static TreeSet<String> catalog                                                //M A synthetic asset catalog for an app of N photos of X by Y tiles - only the manifests are written as the tiles of a lazily constructed photo are not read
+   (final int N,                                                                //P Number of photos
+    final int X,                                                                //P Tiles in X
+    final int Y)                                                                //P Tiles in Y
+   {final TreeSet<String> c = new TreeSet<String>();
+    for(int k = 0; k < N; ++k)
+     {final String p = photo("app/"+k, X, Y, false);
+      c.add(p+"/jpx.data");
+      for  (int j = 1; j <= Y; ++j)
+       {for(int i = 1; i <= X; ++i) c.add(p+"/"+j+"_"+i+".jpg");
+       }
+     }
+    return c;
+   }
+
+  static Stack<Benchmark> benchmarks()                                          //M The benchmarks to run
+   {final Stack<Benchmark> b = new Stack<Benchmark>();
+
+    for(final int N: new int[]{10, 100, 1000, 10000})                           // Construct every photo in an app lazily as AppState does
+     {final TreeSet<String> c = catalog(N, 4, 4);
+      final String a = new File(root, "app").getPath();
+      b.push(new Benchmark("construct app of "+N+" photos")
+       {void setUp()
+         {Assets.catalog.clear();
+          Assets.catalog.addAll(c);
+         }
+        void run()
+         {for(int k = 0; k < N; ++k)
+           {final String p = a+"/"+k;
+            new PhotoBytesJpx(Assets.withPrefix(p+"/"), p, true);
+           }
+         }
+       });
+     }
+
+    for(int g = 1; g <= 4; ++g)                                                 // Each tile grid
+     {final String p = photo("photos/"+g+"x"+g, g, g, true);
+      final TreeSet<String> c = new TreeSet<String>();
+      for(String s: new File(p).list()) c.add(p+"/"+s);
+
+      b.push(new Benchmark("load "+g+"x"+g)                                     // Construct and load every tile
+       {void run()
+         {new PhotoBytesJpx(c, p, false);
+         }
+       });
+
+      final PhotoBytesJpx photo = new PhotoBytesJpx(c, p, false);
+      b.push(new Benchmark("prepare "+g+"x"+g)                                  // Decode every tile with nothing cached
+       {void setUp()
+         {PhotoBytes.bitmapCache.setLimit(0);
+         }
+        void run()
+         {final PhotoBytes.Draw d = photo.prepare(new RectF(), 1);
+          d.start();
+          d.await();
+          d.release();
+         }
+       });
+
+      final PhotoBytes.Draw d = photo.prepare(new RectF(), 1);
+      d.start();
+      d.await();
+      final Canvas canvas = new Canvas();
+      b.push(new Benchmark("draw "+g+"x"+g)                                     // Draw a prepared photo
+       {void run()
+         {d.draw(canvas);
+         }
+       });
+     }
+    return b;
+   }
+
+  public static void main(String[] args)                                        //m Run the benchmarks whose names contain any of the arguments, or all of them if there are no arguments
+   {for(Benchmark b: benchmarks())
+     {boolean run = args.length == 0;
+      for(String a: args) run |= b.name.contains(a);
+      if (!run) continue;
+      final boolean app = b.name.startsWith("construct");                       // Whole apps are slow to construct
+      say(b.measure(app ? 2 : warmUps, app ? 10 : operations));
+     }
+   }
+
+  static void say(Object...O) {Say.say(O);}
+ } //C PhotoBenchmark
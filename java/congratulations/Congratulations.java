@@ -37,9 +37,7 @@ public class Congratulations
    (Context context)                                                            //P Android context if called from Android - should be set in Activity - else null
    {try
      {if (context != null)                                                      // On Android
-       {for(String k: Assets.files)
-         {if (k.startsWith("congratulations")) stack.push(k);
-         }
+       {for(String k: Assets.withPrefix("congratulations")) stack.push(k);      // Files in the congratulations folder
        }
       else                                                                      // On Ubuntu
        {File p = new File("/home/phil/AppaAppsGitHubPhotoApp/congratulations");
@@ -4,7 +4,6 @@
 //------------------------------------------------------------------------------
 package com.appaapps;
 import java.util.Random;
-import java.util.Stack;
 
 public class Fourier                                                            //C Fourier stream
  {private final static Random random = new Random();
@@ -22,28 +21,32 @@ public class Fourier
     speedMultiplier        = 1,                                                 // Overall speed multiplier used to reflect the amount of play
     speedMultiplierMinimum = 0.1;                                               // Speed multiplier lower limit to guarantee that there will be some small amount of motion
 
-  private class Impulse                                                         //C A sine wave
-   {private final float amplitude, frequency;
-    Impulse                                                                     //c A sine wave
-     (final float amplitude,                                                    // The amplitude of the wave
-      final float frequency)                                                    // The frequency of the wave
-     {this.amplitude = amplitude;
-      this.frequency = frequency;
+  private final static int sineTableSize = 4096;                                // Number of intervals in one cycle of the sine table
+  private final static float[] sineTable = new float[sineTableSize + 1];        // Sine over one cycle plus the first entry again so that every interval has both of its ends
+  static
+   {for(int i = 0; i <= sineTableSize; ++i)
+     {sineTable[i] = (float)Math.sin(2 * Math.PI * i / sineTableSize);
      }
-   } //C Impulse
+   }
+  final static double tolerance = 1e-5;                                         // get() agrees with reference() to within this amount: interpolating the table is within 3e-7 of Math.sin and the amplitudes sum to at most three
 
-  private final Stack<Impulse> impulses = new Stack<Impulse>();                 // Impulses to run
+  final float[]                                                                 // The impulses as sine waves held in parallel arrays
+    amplitudes  = new float[nImpulses + 1],                                     // The amplitude of each wave
+    frequencies = new float[nImpulses + 1];                                     // The frequency of each wave
+  final double[] rates = new double[nImpulses + 1];                             // The frequency of each wave multiplied by the speed of this stream - in double as the time in cycles is large
 
   Fourier                                                                       //c Create a new Fourier stream
    (final float speed)                                                          //P Speed multiplier should be > 0, 1 for normal, > 1 for faster, < 1 for slower
    {this.speed = speed;                                                         // Set speed
-    impulses.push(new Impulse(1, 1));                                           // Add the fundamental to stop the numbers hanging around in the middle too much
+    amplitudes[0] = frequencies[0] = 1;                                         // Add the fundamental to stop the numbers hanging around in the middle too much
     for(int i = 1; i <= nImpulses; ++i)                                         // Choose a frequency and amplitude for each impulse
      {final float f = minFrequency + (maxFrequency - minFrequency) *            // Frequency - use doubled random() to force frequencies closer to the lower limit which produces more interference.
           random.nextFloat() * random.nextFloat(),
         a = 2f / nImpulses * random.nextFloat();                                // Amplitude - chosen so that the expected maximum total amplitude is one and therefore does not have to be scaled
-      impulses.push(new Impulse(a, f));                                         // Save
+      amplitudes [i] = a;                                                       // Save
+      frequencies[i] = f;
      }
+    for(int i = 0; i <= nImpulses; ++i) rates[i] = (double)frequencies[i] * speed;
    }
 
   Fourier()                                                                     //c Create a new Fourier stream at the default speed
@@ -61,21 +64,49 @@ public class Fourier
       Math.max(speedMultiplierMinimum, Math.min(1, speedMultiplier));           // Set speed
    }
 
-  float get()                                                                   //M Get the next value
-   {double s = 0;                                                               // The summed wave
-    for(Impulse i: impulses)                                                    // For each impulse
-     {final double
-        t = Time.mins() / 12d,                                                  // Time measured in 5 minute periods
-        v = Math.sin(2 * Math.PI * i.frequency * t * speed * speedMultiplier),  // Frequency modified by overall speed multiplier
-        a = i.amplitude,                                                        // Amplitude
-        w = a * v * v;                                                          // Scaled amplitude
-      s += w;                                                                   // Sum results
+  float get()                                                                   //M Get the current value
+   {return get(Time.secs());
+   }
+
+  float get                                                                     //M Get the value at the specified time from the sine table
+   (final double secs)                                                          //P Time in seconds, normally that of the frame being drawn
+   {final double t = secs / 60d / 12d * speedMultiplier;                        // Time measured in 12 minute periods modified by overall speed multiplier
+    final float[]  a = amplitudes;
+    final double[] r = rates;
+    double s = 0;                                                               // The summed wave
+    for(int i = 0; i < a.length; ++i)                                           // For each impulse
+     {final double c = t * r[i], u = (c - Math.floor(c)) * sineTableSize;       // Position in the cycle in table intervals
+      final int    j = (int)u;
+      final float  d = (float)(u - j),                                          // Fraction of the way along the interval
+        v = sineTable[j] + (sineTable[j+1] - sineTable[j]) * d;                 // Wave interpolated from the table
+      s += a[i] * v * v;                                                        // Sum scaled amplitudes
      }
     return (float)s;                                                            // Return sum which will have an expected value of one
    }
 
+  double reference                                                              //M Get the value at the specified time from Math.sin to check get() against
+   (final double secs)                                                          //P Time in seconds
+   {final double t = secs / 60d / 12d;                                          // Time measured in 12 minute periods
+    double s = 0;                                                               // The summed wave
+    for(int i = 0; i < amplitudes.length; ++i)                                  // For each impulse
+     {final double v = Math.sin                                                 // Frequency modified by overall speed multiplier
+       (2 * Math.PI * frequencies[i] * t * speed * speedMultiplier);
+      s += amplitudes[i] * v * v;                                               // Sum scaled amplitudes
+     }
+    return s;
+   }
+
   public static void main(String[] args)
-   {final Fourier f = new Fourier();
+   {for(int k = 0; k < 100; ++k)                                                // Table agrees with Math.sin
+     {final Fourier f = new Fourier(0.5f + k / 50f);
+      for(int i = 0; i < 1000; ++i)
+       {final double t = Time.secs() + i * 0.37 + k * 1e5;
+        assert Math.abs(f.get(t) - f.reference(t)) < tolerance;
+       }
+     }
+    if (args.length == 0) return;                                               // Show the stream only if asked
+
+    final Fourier f = new Fourier();
     for(int i = 0; i < 1000; ++i)
      {say(f.get());
       try{Thread.sleep(16);} catch(Exception e) {}
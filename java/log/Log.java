@@ -10,6 +10,7 @@ import java.util.LinkedList;
 public class Log                                                                //C Logging
  {public final static double keepTime  = 60;                                    // Number of seconds to keep entries on the screen
   public final static LinkedList<Entry> logEntries = new LinkedList<Entry>();   // Entries in the log
+  private static int changes = 0;                                               // Number of entries added to or removed from the log
 
   static private class Entry                                                    //C Entry in a log
    {final private double time = t();                                            // Time of entry
@@ -28,6 +29,7 @@ public class Log
     final LinkedList<Entry> l = Log.logEntries;                                 // Access log entries
     if (l.size() == 0 || !l.getFirst().text.equals(s))                          // Add a new message to the log
      {l.offerFirst(new Entry(s));                                               // Add the entry to the log
+      ++changes;
      }
     try
      {android.util.Log.e("AppaApps", s);                                        // Write the entry to the android log as well
@@ -51,11 +53,15 @@ public class Log
        {final int y = ++i * delta;
         c.drawText(e.text, delta, y, p);
         if (y > c.getHeight()) break;
-        if (i > 0 && e.time < t() - keepTime) l.removeLast();
+        if (i > 0 && e.time < t() - keepTime) {l.removeLast(); ++changes;}
        }
      } catch(Exception e) {}
    }
 
+  static synchronized public int changes()                                      //M Number of changes to the log so that the display can tell when the log must be drawn again
+   {return changes;
+   }
+
   public static void printStack()                                               //M Print stack trace
    {try {throw new Exception();} catch(Exception e) {e.printStackTrace();}
    }
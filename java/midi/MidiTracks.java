@@ -27,9 +27,7 @@ public class MidiTracks
     final String folder)                                                        //P Folder in assets containing the midi tracks
    {try
      {if (context != null)                                                      // On Android
-       {for(String k: Assets.files)
-         {if (k.startsWith(folder)) stack.push(k);
-         }
+       {for(String k: Assets.withPrefix(folder)) stack.push(k);                 // Files in the folder
        }
       else                                                                      // On Ubuntu
        {File p = new File("/home/phil/AppaAppsGitHubPhotoApp/"+folder);
@@ -7,46 +7,1035 @@ package com.appaapps;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.graphics.RectF;
 
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Stack;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 abstract public class PhotoBytes                                                //C Photo encoded in one of various ways
- {abstract public Draw prepare                                                  //M Prepare to draw the photo
+ {final public static BitmapCache bitmapCache =                                 // Decoded tiles shared by all photos so that a photo shown again is not decoded again
+    new BitmapCache(Runtime.getRuntime().maxMemory() / 8);
+  final public static BitmapPool bitmapPool =                                   // Tile bitmaps no longer in use that can be decoded into again
+    new BitmapPool(Runtime.getRuntime().maxMemory() / 16);
+  final public static DecodeExecutor decodeExecutor =                           // Threads shared by all photos to decode their tiles
+    new DecodeExecutor(Runtime.getRuntime().availableProcessors());
+  final static AtomicLong totalDecodedBytes = new AtomicLong();                 // Bytes of bitmap decoded for all photos
+  public static int smallArea = 4;                                              // A photo whose inverse fractional area is at least this is drawn small enough to be decoded at 16 bits per pixel if it is opaque
+  public boolean highQuality = false;                                           // Always decode this photo at 32 bits per pixel
+  final AtomicLong decodedBytes = new AtomicLong();                             // Bytes of bitmap decoded for this photo
+
+  abstract public Draw prepare                                                  //M Prepare to draw the photo
    (final RectF picture,                                                        //P Dimensions of  bitmap
     final int   inverseFractionalArea);                                         //P The approximate inverse of the fraction of the area of the screen covered by  this image so that the image can be sub sampled appropriately if necessary
 
-  abstract class Draw extends Thread                                            //C Bitmap prepare / draw
+  abstract public Bitmap decodeTile                                             //M Decode a tile of the photo
+   (final int j,                                                                //P Tile row
+    final int i,                                                                //P Tile column
+    final BitmapFactory.Options options);                                       //P Decoding options
+
+  static int actualBitMapScale                                                  //M Adjust proposed bitmap scale to avoid downscaling low resolution images too much
+   (final int proposedBitMapScale,                                              //P Proposed scale to apply to the bitmap
+    final int X,                                                                //P Number of bitmaps in X
+    final int Y)                                                                //P Number of bitmaps in Y
+   {return
+      (X * Y <=   4) ? 1                               :
+      (X * Y <=  16) ? Math.min(2, proposedBitMapScale):
+      (X * Y <=  64) ? Math.min(4, proposedBitMapScale):
+      (X * Y <= 256) ? Math.min(8, proposedBitMapScale):
+                                   proposedBitMapScale;                         // Scale as proposed for large images
+   }
+
+  public String cacheKey()                                                      //M Name of the photo in the bitmap cache - null if its tiles should not be cached
+   {return null;
+   }
+
+  public int tileSize()                                                         //M Size in pixels of each full tile so that tiles can be decoded into pooled bitmaps - zero if the tiles should not be pooled
+   {return 0;
+   }
+
+  public boolean opaque()                                                       //M Whether the photo is known to have no transparent pixels so that it can be decoded without an alpha channel
+   {return false;
+   }
+
+  public Bitmap.Config config                                                   //M The pixel format to decode this photo in: 16 bits per pixel if the photo is opaque and drawn small unless a high quality photo has been requested, else 32 bits per pixel
+   (final int inverseFractionalArea)                                            //P The approximate inverse of the fraction of the area of the screen covered by this image
+   {return opaque() && !highQuality && inverseFractionalArea >= smallArea ?
+      Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+   }
+
+  public long decodedBytes()                                                    //M Bytes of bitmap decoded for this photo so far
+   {return decodedBytes.get();
+   }
+
+  public static long totalDecodedBytes()                                        //M Bytes of bitmap decoded for all photos so far
+   {return totalDecodedBytes.get();
+   }
+
+  Bitmap decoded                                                                //M Count the bytes in a newly decoded bitmap
+   (final Bitmap b)                                                             //P Bitmap or null
+   {if (b != null)
+     {final long n = b.getByteCount();
+      decodedBytes.addAndGet(n);
+      totalDecodedBytes.addAndGet(n);
+     }
+    return b;
+   }
+
+  abstract class Draw implements Runnable                                       //C Bitmap prepare / draw - run() prepares the bitmaps on the decode executor
    {final int proposedBitMapScale;                                              // The proposed bitmap scale
     final BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();    // Sub sample size option
     final Bitmap[][]bitmap;                                                     // Array of bitmaps
     final int bitMapScale;                                                      // The actual bitmap scale to be used
+    volatile boolean cancelled = false;                                         // Set when the bitmaps are no longer wanted so that run() can stop early
+    private DecodeExecutor.Task task = null;                                    // The task running run() on the decode executor once started
+    int priority = DecodeExecutor.visible;                                      // Priority at which the bitmaps are being prepared
+    volatile boolean visibleOnly = false;                                       // Prepare no tiles in advance, instead decode each tile when it is first drawn
+    final boolean[][]requested;                                                 // Tiles requested by drawTiles() because they were visible but not prepared
+    final Rect clip = new Rect();                                               // Clip bounds in bitmap coordinates - only used on the display thread
+    volatile boolean progressive = false;                                       // Decode a low resolution preview of every tile before decoding the tiles at full resolution
+    final Bitmap[][]preview;                                                    // Low resolution preview of each tile
+    final int previewScale;                                                     // Sample size used for the preview
+    final BitmapFactory.Options previewOptions = new BitmapFactory.Options();   // Sub sample size option for the preview
+    private DecodeExecutor.Task previewTask = null;                             // The task decoding the preview once started
+    final RectF scaledArea = new RectF();                                       // Area covered by a tile decoded at a different sample size - only used on the display thread
+    volatile float magnification = 1;                                           // Additional magnification being applied to the photo by the user
+    final Bitmap[][]refined;                                                    // Tiles decoded at a finer sample size than the bitmap scale while the photo is magnified
+    final boolean[][]refinedRequested;                                          // Tiles whose refinement has been requested at the current refined scale
+    volatile int refinedScale;                                                  // Sample size of the refined tiles - equal to the bitmap scale when there is no refinement
+    private boolean released = false;                                           // Set when the bitmaps have been returned to the bitmap pool
 
     Draw
      (final int proposedBitMapScale,                                            //P Proposed scale to apply to the bitmap
       final int nX,                                                             //P Number of bitmaps in X
       final int nY)                                                             //P Number of bitmaps in Y
+     {this(proposedBitMapScale, nX, nY, config(proposedBitMapScale));           // Pixel format chosen by drawn area
+     }
+
+    Draw
+     (final int proposedBitMapScale,                                            //P Proposed scale to apply to the bitmap
+      final int nX,                                                             //P Number of bitmaps in X
+      final int nY,                                                             //P Number of bitmaps in Y
+      final Bitmap.Config config)                                               //P Pixel format to decode the tiles in
      {this.proposedBitMapScale = proposedBitMapScale;                           // Proposed bitmap scale
       bitMapScale = actualBitMapScale(proposedBitMapScale, nX, nY);            // Adjust proposed bitmap scale if necessary
       bitmapOptions.inSampleSize = bitMapScale;                                 // Set bitmap scale
+      bitmapOptions.inPreferredConfig = config;                                 // Set pixel format
       bitmap = new Bitmap[nY][nX];                                              // Bitmaps used to display image
-     }
-
-    int actualBitMapScale                                                       //M Adjust proposed bitmap scale to avoid downscaling low resolution images too much
-     (final int proposedBitMapScale,                                            //P Proposed scale to apply to the bitmap
-      final int X,                                                              //P Number of bitmaps in X
-      final int Y)                                                              //P Number of bitmaps in Y
-     {return
-        (X * Y <=   4) ? 1                               :
-        (X * Y <=  16) ? Math.min(2, proposedBitMapScale):
-        (X * Y <=  64) ? Math.min(4, proposedBitMapScale):
-        (X * Y <= 256) ? Math.min(8, proposedBitMapScale):
-                                     proposedBitMapScale;                       // Scale as proposed for large images
+      requested = new boolean[nY][nX];                                          // Tiles requested because they were visible when drawn
+      preview = new Bitmap[nY][nX];                                             // Low resolution preview
+      refined = new Bitmap[nY][nX];                                             // High resolution tiles while magnified
+      refinedRequested = new boolean[nY][nX];
+      refinedScale = bitMapScale;                                               // No refinement yet
+      previewScale = Math.max(8, 2 * bitMapScale);                              // Small enough to decode in a few milliseconds
+      previewOptions.inSampleSize = previewScale;
+      previewOptions.inPreferredConfig = config(Integer.MAX_VALUE);             // The preview is always small
      }
 
     int getActualBitMapScale()                                                  //M Get the adjusted bitmap scale
      {return bitMapScale;
      }
 
+    public void start()                                                         //M Prepare the bitmaps on the decode executor as a photo that is about to be shown
+     {start(DecodeExecutor.visible);
+     }
+
+    synchronized public void start                                              //M Prepare the bitmaps on the decode executor at the specified priority
+     (final int priority)                                                       //P Priority - lower priorities are decoded first
+     {if (task != null || cancelled) return;                                    // Already started or no longer wanted
+      if (progressive)                                                          // Preview first at the requested priority, then the full resolution tiles after every other preview at this priority
+       {previewTask = decodeExecutor.submit(new Runnable()
+         {public void run()                                                     //O=java.lang.Runnable.run - decode the preview
+           {preparePreview();
+           }
+         }, priority);
+        this.priority = Math.max(priority, DecodeExecutor.refine);
+       }
+      else this.priority = priority;
+      task = decodeExecutor.submit(this, this.priority);
+     }
+
+    public Draw progressive()                                                   //M Decode a low resolution preview of every tile before decoding them at full resolution so that the photo can be shown sooner - call before start()
+     {progressive = true;
+      return this;
+     }
+
+    void preparePreview()                                                       //M Decode the low resolution preview of each tile
+     {for  (int j = 0; j < preview.length;    ++j)
+       {for(int i = 0; i < preview[j].length; ++i)
+         {if (cancelled) return;                                                // No longer wanted
+          final Bitmap b = cached(j, i, bitmapOptions);                         // The full resolution tile might already have been decoded for an earlier question
+          if      (b != null)            set(bitmap,  j, i, b);
+          else if (bitmap[j][i] == null) set(preview, j, i, cachedTile(j, i, previewOptions));
+         }
+       }
+     }
+
+    public Draw visibleOnly()                                                   //M Decode each tile only when it first becomes visible rather than decoding all the tiles when prepared - call before start()
+     {visibleOnly = true;
+      return this;
+     }
+
+    void prepareTiles()                                                         //M Decode all the tiles in parallel: helpers on the decode executor and this thread take tiles in turn until there are none left, then this thread waits for the tiles still being decoded by the helpers
+     {if (visibleOnly) return;                                                  // The tiles will be decoded as they become visible
+      final int nY = bitmap.length, nX = nY > 0 ? bitmap[0].length : 0;         // Tiles in each direction
+      final int n  = nX * nY;                                                   // Number of tiles
+      final AtomicInteger next = new AtomicInteger(0);                          // Next tile to decode
+      final AtomicInteger done = new AtomicInteger(0);                          // Number of tiles decoded
+
+      final Runnable decode = new Runnable()                                    // Decode tiles until there are none left
+       {public void run()                                                       //O=java.lang.Runnable.run - decode tiles
+         {for(int k = next.getAndIncrement(); k < n; k = next.getAndIncrement())
+           {try
+             {if (!cancelled) set(bitmap, k / nX, k % nX, cachedTile(k / nX, k % nX));
+             }
+            finally
+             {synchronized(done)
+               {if (done.incrementAndGet() == n) done.notifyAll();              // Last tile
+               }
+             }
+           }
+         }
+       };
+
+      final int h = Math.min(n, decodeExecutor.threads) - 1;                    // Helpers - there is no point in having more helpers than threads or tiles
+      for(int i = 0; i < h; ++i) decodeExecutor.submit(decode, priority);
+      decode.run();                                                             // Decode on this thread too so that the tiles are decoded even if every other decoding thread is busy
+      synchronized(done)
+       {while(done.get() < n)                                                   // Wait for the helpers to finish their tiles
+         {try {done.wait();} catch(InterruptedException e) {return;}
+         }
+       }
+     }
+
+    void drawTiles                                                              //M Draw the tiles that intersect the clip of the canvas and request the decode of any visible tiles that have not been prepared
+     (final Canvas canvas,                                                      //P Canvas - scaled and translated so that we can draw at coordinates (0,0) in the size of the photo and clipped to the visible area
+      final int    s)                                                           //P Size of a tile in the bitmap
+     {if (s <= 0 || !canvas.getClipBounds(clip)) return;                        // Nothing visible - the clip bounds are in bitmap coordinates as they already include the translation, scaling and magnification applied to the canvas
+      final int nY = bitmap.length, nX = nY > 0 ? bitmap[0].length : 0;         // Tiles in each direction
+      final int
+        i1 = Math.max(0,      clip.left         / s),                           // Visible range of tiles
+        i2 = Math.min(nX - 1, (clip.right  - 1) / s),
+        j1 = Math.max(0,      clip.top          / s),
+        j2 = Math.min(nY - 1, (clip.bottom - 1) / s);
+      final boolean prepared = isPrepared();                                    // Only request tiles once preparation has finished as, until then, the tile might be on its way
+      final int r = refineScale();                                              // Sample size needed to show the magnified photo sharply
+
+      for  (int j = j1; j <= j2; ++j)                                           // Each visible tile
+       {for(int i = i1; i <= i2; ++i)
+         {if (r < bitMapScale)                                                  // Magnified enough to need finer tiles
+           {final Bitmap f = refined[j][i];
+            if (f != null)                                                      // Draw the refined tile
+             {drawScaled(canvas, f, i, j, s, r);
+              continue;
+             }
+            requestRefinedTile(j, i, r);                                        // Decode just this visible tile at the finer sample size
+           }
+          final Bitmap b = bitmap[j][i];
+          if (b != null)                                                        // Place each bitmap that has been prepared
+           {canvas.drawBitmap(b, i*s, j*s, null);
+            continue;
+           }
+          final Bitmap p = preview[j][i];
+          if (p != null) drawScaled(canvas, p, i, j, s, previewScale);          // Stretch the preview over the area of the tile until the tile is ready
+          if (prepared) requestTile(j, i);                                      // Decode the tile now that it is visible
+         }
+       }
+     }
+
+    private void drawScaled                                                     //M Draw a tile decoded at a different sample size from the bitmap scale over the area of the tile
+     (final Canvas canvas,                                                      //P Canvas
+      final Bitmap b,                                                           //P Tile bitmap
+      final int    i,                                                           //P Tile column
+      final int    j,                                                           //P Tile row
+      final int    s,                                                           //P Size of a tile at the bitmap scale
+      final int    scale)                                                       //P Sample size at which the tile was decoded
+     {final float f = (float)scale / bitMapScale;                               // Scale from the tile to the bitmap
+      scaledArea.set(i*s, j*s, i*s + b.getWidth() * f, j*s + b.getHeight() * f);
+      canvas.drawBitmap(b, null, scaledArea, null);
+     }
+
+    public void magnify                                                         //M Set the additional magnification being applied to the photo so that the visible tiles can be refined while it is magnified
+     (final float magnification)                                                //P Magnification - 1 when not magnified
+     {this.magnification = magnification;
+     }
+
+    int refineScale()                                                           //M The sample size needed to show the photo sharply at the current magnification, releasing any refined tiles when it changes - only called on the display thread
+     {final int m = Integer.highestOneBit(Math.max(1, Math.round(magnification))); // Magnification as a power of two
+      final int r = Math.max(1, bitMapScale / m);                               // Finer sample size
+      if (r != refinedScale) synchronized(this)                                 // Release the tiles refined at a different scale
+       {refinedScale = r;
+        for  (int j = 0; j < refined.length;    ++j)
+         {for(int i = 0; i < refined[j].length; ++i)
+           {set(refined, j, i, null);
+            refinedRequested[j][i] = false;
+           }
+         }
+       }
+      return r;
+     }
+
+    private void requestRefinedTile                                             //M Decode a visible tile at a finer sample size while the photo is magnified - the refined tile is not cached so that only the magnified tiles occupy memory at the finer scale
+     (final int j,                                                              //P Tile row
+      final int i,                                                              //P Tile column
+      final int r)                                                              //P Sample size
+     {if (cancelled || refinedRequested[j][i]) return;                          // Already requested
+      refinedRequested[j][i] = true;
+      decodeExecutor.submit(new Runnable()
+       {public void run()                                                       //O=java.lang.Runnable.run - decode the refined tile
+         {if (cancelled || refinedScale != r) return;                           // No longer wanted
+          final BitmapFactory.Options o = new BitmapFactory.Options();
+          o.inSampleSize = r;
+          o.inPreferredConfig = bitmapOptions.inPreferredConfig;
+          final Bitmap b = decodePooled(j, i, o);
+          synchronized(Draw.this)
+           {if (refinedScale == r) set(refined, j, i, b);                       // Still magnified at this scale
+            else bitmapPool.release(b);                                         // No longer needed
+           }
+         }
+       }, DecodeExecutor.refine);
+     }
+
+    private void requestTile                                                    //M Decode a tile that has become visible at the priority of a visible photo
+     (final int j,                                                              //P Tile row
+      final int i)                                                              //P Tile column
+     {if (cancelled || requested[j][i]) return;                                 // Already requested
+      requested[j][i] = true;
+      decodeExecutor.submit(new Runnable()
+       {public void run()                                                       //O=java.lang.Runnable.run - decode the tile
+         {if (!cancelled) set(bitmap, j, i, cachedTile(j, i));
+         }
+       }, DecodeExecutor.visible);
+     }
+
+    boolean isPrepared()                                                        //M Whether the preparation of the bitmaps has finished
+     {final DecodeExecutor.Task t;
+      synchronized(this) {t = task;}
+      return t != null && t.isDone() && !cancelled;
+     }
+
+    public void await()                                                         //M Wait until the bitmaps have been prepared or the preparation has been cancelled
+     {final DecodeExecutor.Task t;
+      synchronized(this) {t = task;}
+      await(t);
+     }
+
+    public void awaitPreview()                                                  //M Wait until the preview has been prepared if the bitmaps are being prepared progressively, else until the bitmaps have been prepared
+     {final DecodeExecutor.Task t;
+      synchronized(this) {t = progressive ? previewTask : task;}
+      await(t);
+     }
+
+    private void await                                                          //M Wait for a task to finish or be cancelled
+     (final DecodeExecutor.Task t)                                              //P Task - null if not started
+     {if (t == null) return;                                                    // Not started
+      try
+       {t.get();
+       }
+      catch(CancellationException e) {}                                         // Cancelled before it ran
+      catch(Exception e)
+       {say("Failed to prepare bitmaps");
+        e.printStackTrace();
+       }
+     }
+
+    public void cancel()                                                        //M Drop the preparation of these bitmaps because they are no longer wanted
+     {cancelled = true;
+      final DecodeExecutor.Task t, p;
+      synchronized(this) {t = task; p = previewTask;}
+      if (t != null && t.cancel(false)) decodeExecutor.pool.remove(t);          // Remove from the queue if not yet running, otherwise run() notices the cancelled flag between tiles
+      if (p != null && p.cancel(false)) decodeExecutor.pool.remove(p);
+     }
+
+    Bitmap cachedTile                                                           //M Get a decoded tile at the bitmap scale from the bitmap cache or else decode it and add it to the cache
+     (final int j,                                                              //P Tile row
+      final int i)                                                              //P Tile column
+     {return cachedTile(j, i, bitmapOptions);
+     }
+
+    Bitmap cachedTile                                                           //M Get a decoded tile from the bitmap cache or else decode it and add it to the cache - the caller owns a reference to the tile that it must pass to set()
+     (final int j,                                                              //P Tile row
+      final int i,                                                              //P Tile column
+      final BitmapFactory.Options options)                                      //P Decoding options - the sample size and pixel format form part of the key
+     {final String p = cacheKey();
+      if (p == null) return decodePooled(j, i, options);                        // Not cached
+      final String k = key(p, j, i, options);
+      final Bitmap c = bitmapCache.getRetained(k);
+      if (c != null) return c;                                                  // Already decoded
+      return bitmapCache.putRetained(k, decodePooled(j, i, options));           // Another thread might have cached the same tile while this one was decoding it
+     }
+
+    Bitmap decodePooled                                                         //M Decode a tile into a bitmap from the bitmap pool if a suitable one is free, else into a new bitmap that can be pooled when it is no longer in use - the caller owns the only reference to the tile
+     (final int j,                                                              //P Tile row
+      final int i,                                                              //P Tile column
+      final BitmapFactory.Options options)                                      //P Decoding options - copied so that each decode can have its own target bitmap
+     {final int t = tileSize();
+      if (t <= 0) return decoded(decodeTile(j, i, options));                    // Not pooled
+      final int    w = (t + options.inSampleSize - 1) / options.inSampleSize;   // Dimensions of a full tile at this sample size
+      final String k = BitmapPool.key(w, w, options.inPreferredConfig);
+      final BitmapFactory.Options o = new BitmapFactory.Options();
+      o.inSampleSize      = options.inSampleSize;
+      o.inPreferredConfig = options.inPreferredConfig;
+      o.inMutable         = true;                                               // Only mutable bitmaps can be decoded into again
+      o.inBitmap          = bitmapPool.take(k);                                 // Reuse a free bitmap if possible
+      Bitmap b = null;
+      try
+       {b = decoded(decodeTile(j, i, o));
+       }
+      catch(IllegalArgumentException e)                                         // Older Androids can only reuse a bitmap for a tile of exactly the same size at a sample size of one
+       {bitmapPool.offer(o.inBitmap, k);
+        o.inBitmap = null;
+        b = decoded(decodeTile(j, i, o));
+       }
+      if (b == null) return null;
+      final boolean reused = b == o.inBitmap;
+      bitmapPool.track(b, reused, reused || b.getWidth() == w && b.getHeight() == w ? k : null); // Edge tiles that were not decoded into a full sized bitmap cannot be pooled
+      return b;
+     }
+
+    void set                                                                    //M Place a bitmap in one of the arrays of bitmaps, keeping count of the references to it so that it can be pooled when it is no longer in use
+     (final Bitmap[][]a,                                                        //P Array of bitmaps
+      final int j,                                                              //P Tile row
+      final int i,                                                              //P Tile column
+      final Bitmap b)                                                           //P Bitmap or null to clear - the caller's reference to the bitmap passes to the array or is released
+     {synchronized(this)
+       {if (released)                                                           // The bitmaps have already been released
+         {bitmapPool.release(b);
+          return;
+         }
+        final Bitmap o = a[j][i];
+        if (o != null && b != null)                                             // Keep the tile already present as it might be being drawn
+         {bitmapPool.release(b);
+          return;
+         }
+        a[j][i] = b;                                                            // The array takes the caller's reference
+        bitmapPool.release(o);
+       }
+     }
+
+    public void release()                                                       //M Stop preparing the bitmaps and return them to the bitmap pool - call on the display thread once the photo will no longer be drawn
+     {cancel();
+      synchronized(this)
+       {for(Bitmap[][]a: new Bitmap[][][]{bitmap, preview, refined})
+         {for  (int j = 0; j < a.length;    ++j)
+           {for(int i = 0; i < a[j].length; ++i)
+             {set(a, j, i, null);
+             }
+           }
+         }
+        released = true;
+       }
+     }
+
+    Bitmap cached                                                               //M Get a decoded tile from the bitmap cache without decoding it if it is not there - the caller owns a reference to the tile that it must pass to set()
+     (final int j,                                                              //P Tile row
+      final int i,                                                              //P Tile column
+      final BitmapFactory.Options options)                                      //P Decoding options - the sample size and pixel format form part of the key
+     {final String p = cacheKey();
+      if (p == null) return null;                                               // Not cached
+      return bitmapCache.peekRetained(key(p, j, i, options));
+     }
+
+    String key                                                                  //M Key of a tile in the bitmap cache
+     (final String p,                                                           //P Name of the photo in the bitmap cache
+      final int j,                                                              //P Tile row
+      final int i,                                                              //P Tile column
+      final BitmapFactory.Options options)                                      //P Decoding options - the sample size and pixel format form part of the key
+     {return p+" "+j+" "+i+" "+options.inSampleSize+" "+options.inPreferredConfig;
+     }
+
     abstract public void draw                                                   //M Draw the photo
      (final Canvas canvas);                                                     //P Canvas - scaled and translated so that we can draw at coordinates (0,0) in the size of the photo
    } // Draw
+
+  public static class DecodeExecutor                                            //C A fixed number of decoding threads, below the priority of the display thread, that run the most urgent decodes first
+   {final public static int visible = 0, refine = 1, prefetch = 2;              // Priorities: photos being shown, improvements to photos being shown, photos that might be shown next
+    final ThreadPoolExecutor pool;                                              // The decoding threads
+    final int threads;                                                          // Number of decoding threads
+    final AtomicLong sequence = new AtomicLong();                               // Tasks of equal priority run in the order in which they were submitted
+
+    public DecodeExecutor                                                       //c Create the executor
+     (final int threads)                                                        //P Number of decoding threads
+     {final int n = this.threads = Math.max(1, threads);
+      pool = new ThreadPoolExecutor(n, n, 10, TimeUnit.SECONDS,
+        new PriorityBlockingQueue<Runnable>(), new ThreadFactory()
+         {public Thread newThread(Runnable r)                                   //O=java.util.concurrent.ThreadFactory.newThread - decoding thread
+           {final Thread t = new Thread(r, "Decode");
+            t.setDaemon(true);                                                  // Do not keep the app alive
+            t.setPriority(Thread.NORM_PRIORITY - 1);                            // Below the display thread
+            return t;
+           }
+         });
+      pool.allowCoreThreadTimeOut(true);                                        // Release the threads when there is nothing to decode
+     }
+
+    public Task submit                                                          //M Queue a runnable for execution at the specified priority
+     (final Runnable runnable,                                                  //P Runnable
+      final int      priority)                                                  //P Priority - lower priorities run first
+     {final Task t = new Task(runnable, priority, sequence.getAndIncrement());
+      pool.execute(t);
+      return t;
+     }
+
+    public int queued()                                                         //M Number of tasks waiting to run
+     {return pool.getQueue().size();
+     }
+
+    public class Task                                                           //C A future for a queued runnable ordered by priority then by submission
+      extends FutureTask<Void>
+      implements Comparable<Task>
+     {final int  priority;                                                      // Priority - lower priorities run first
+      final long sequence;                                                      // Submission order
+
+      Task                                                                      //c Create a task
+       (final Runnable runnable,                                                //P Runnable
+        final int      priority,                                                //P Priority
+        final long     sequence)                                                //P Submission order
+       {super(runnable, null);
+        this.priority = priority;
+        this.sequence = sequence;
+       }
+
+      public int compareTo                                                      //O=java.lang.Comparable.compareTo - order by priority then by submission
+       (final Task t)                                                           //P Other task
+       {if (priority != t.priority) return priority < t.priority ? -1 : +1;
+        return sequence < t.sequence ? -1 : sequence > t.sequence ? +1 : 0;
+       }
+     } //C Task
+   } //C DecodeExecutor
+
+  public static class Prefetch                                                  //C Decode photos likely to be shown next at prefetch priority so that their tiles are in the bitmap cache when they are needed
+   {final Stack<Draw> draws = new Stack<Draw>();                                // Photos being prefetched
+    long bytes = 0;                                                             // Estimated bytes of bitmap being prefetched
+    int skipped = 0;                                                            // Number of photos not prefetched because they would exceed the budget
+
+    public Prefetch                                                             //c Start prefetching photos in order until the budget is exhausted
+     (final Iterable<? extends PhotoBytes> photos,                              //P Photos in order of decreasing likelihood of being shown next
+      final int inverseFractionalArea,                                          //P The approximate inverse of the fraction of the area of the screen each photo is likely to cover - the same value the photos will be prepared with when shown so that the cache keys match
+      final long budget)                                                        //P Maximum number of bytes of bitmap to prefetch
+     {for(PhotoBytes p: photos)
+       {if (p == null) continue;
+        final RectF r = new RectF();
+        final Draw d = p.prepare(r, Maths.roundUpToPowerOfTwo(inverseFractionalArea));
+        final long n = (long)(r.width() * r.height()) *                         // Estimated size of the decoded photo
+          (d.bitmapOptions.inPreferredConfig == Bitmap.Config.RGB_565 ? 2 : 4);
+        if (bytes + n > budget)                                                 // Over budget
+         {d.release();
+          ++skipped;
+          continue;
+         }
+        bytes += n;
+        d.start(DecodeExecutor.prefetch);                                       // Behind everything that is visible or being refined
+        draws.push(d);
+       }
+     }
+
+    public void cancel()                                                        //M Stop prefetching and release the bitmaps - any tiles already decoded remain in the bitmap cache
+     {for(Draw d: draws) d.release();
+      draws.clear();
+     }
+
+    public String toString()                                                    //M Statistics
+     {return "Prefetch(photos="+draws.size()+", bytes="+bytes+
+             ", skipped="+skipped+")";
+     }
+   } //C Prefetch
+
+  public static class BitmapCache                                               //C Least recently used decoded tiles limited by the total number of bytes in their pixels. Each bitmap returned by the cache is retained in the bitmap pool for the caller, who owns that reference until it places the bitmap with Draw.set() or releases it, so that an eviction cannot pool a tile that is about to be drawn
+   {final LinkedHashMap<String,Bitmap> bitmaps =                                // Bitmaps by photo, tile and sample size in order of last use
+      new LinkedHashMap<String,Bitmap>(16, 0.75f, true);
+    long limit;                                                                 // Maximum number of bytes to cache - zero disables the cache
+    long bytes = 0;                                                             // Number of bytes currently cached
+    long hits = 0, misses = 0, evictions = 0;                                   // Number of requests satisfied by the cache, number not satisfied, number of bitmaps discarded
+
+    public BitmapCache                                                          //c Create a bitmap cache
+     (final long limit)                                                         //P Maximum number of bytes to cache
+     {this.limit = limit;
+     }
+
+    synchronized public Bitmap getRetained                                      //M Get a bitmap if it is in the cache and retain it for the caller before another thread can evict it - the caller must place or release the bitmap
+     (final String key)                                                         //P Photo, tile and sample size
+     {final Bitmap b = bitmaps.get(key);
+      if (b != null) ++hits; else ++misses;
+      bitmapPool.retain(b);
+      return b;
+     }
+
+    synchronized public Bitmap peekRetained                                     //M Get a bitmap if it is in the cache without counting a hit or a miss and retain it for the caller before another thread can evict it - the caller must place or release the bitmap
+     (final String key)                                                         //P Photo, tile and sample size
+     {final Bitmap b = bitmaps.get(key);
+      bitmapPool.retain(b);
+      return b;
+     }
+
+    synchronized public Bitmap putRetained                                      //M Add a bitmap owned by the caller to the cache and discard the least recently used bitmaps if the cache is over its limit, unless another thread has already cached a bitmap with this key in which case the caller's bitmap is released and the cached one is retained for the caller instead - the caller must place or release the bitmap returned
+     (final String key,                                                         //P Photo, tile and sample size
+      final Bitmap b)                                                           //P Bitmap or null
+     {if (b == null) return null;
+      final Bitmap c = bitmaps.get(key);
+      if (c != null)                                                            // Decoded by another thread in the meantime
+       {if (c == b) return b;
+        bitmapPool.retain(c);
+        bitmapPool.release(b);
+        return c;
+       }
+      if (b.getByteCount() > limit) return b;                                   // Too big to cache
+      bitmaps.put(key, b);
+      bitmapPool.retain(b);                                                     // The cache is using the bitmap
+      bytes += b.getByteCount();
+      trim();
+      return b;
+     }
+
+    synchronized public void setLimit                                           //M Change the limit on the number of bytes cached
+     (final long limit)                                                         //P Maximum number of bytes to cache - zero disables the cache
+     {this.limit = limit;
+      trim();
+     }
+
+    private void trim()                                                         //M Discard the least recently used bitmaps until the cache is within its limit
+     {final Iterator<Bitmap> i = bitmaps.values().iterator();                   // Least recently used first
+      while(bytes > limit && i.hasNext())
+       {final Bitmap b = i.next();
+        bytes -= b.getByteCount();
+        i.remove();
+        bitmapPool.release(b);                                                  // Pool the bitmap if no photo is using it
+        ++evictions;
+       }
+     }
+
+    synchronized public long bytes()                                            //M Number of bytes currently cached
+     {return bytes;
+     }
+
+    synchronized public long limit()                                            //M Maximum number of bytes to cache
+     {return limit;
+     }
+
+    synchronized public int size()                                              //M Number of bitmaps currently cached
+     {return bitmaps.size();
+     }
+
+    synchronized public double hitRate()                                        //M Fraction of requests satisfied by the cache
+     {final long n = hits + misses;
+      return n == 0 ? 0 : (double)hits / n;
+     }
+
+    synchronized public String toString()                                       //M Statistics
+     {return "BitmapCache(size="+bitmaps.size()+", bytes="+bytes+
+             ", hits="+hits+", misses="+misses+", evictions="+evictions+")";
+     }
+   } //C BitmapCache
+
+  public static class BitmapPool                                                //C Tile bitmaps that are no longer in use by any photo or the bitmap cache, by dimensions and configuration, ready to be decoded into again
+   {final HashMap<String,Stack<Bitmap>> free =                                  // Free bitmaps by dimensions and configuration
+      new HashMap<String,Stack<Bitmap>>();
+    final IdentityHashMap<Bitmap,Use> used =                                    // Bitmaps that can be pooled when no longer in use
+      new IdentityHashMap<Bitmap,Use>();
+    long limit;                                                                 // Maximum number of bytes in free bitmaps
+    long bytes = 0;                                                             // Number of bytes in free bitmaps
+    long reused = 0, allocated = 0, returned = 0, discarded = 0;                // Decodes into a pooled bitmap, decodes into a new bitmap, bitmaps returned to the pool, bitmaps left for garbage collection because they could not be pooled
+
+    static class Use                                                            //C References to a bitmap that could be pooled
+     {int references = 1;                                                       // Number of arrays of bitmaps, caches and callers using this bitmap - starting with the caller that decoded it
+      final String key;                                                         // Dimensions and configuration the bitmap was allocated for - null if it cannot be pooled
+      Use(final String key) {this.key = key;}
+     }
+
+    public BitmapPool                                                           //c Create a bitmap pool
+     (final long limit)                                                         //P Maximum number of bytes in free bitmaps
+     {this.limit = limit;
+     }
+
+    static String key                                                           //M Key of a free bitmap
+     (final int w,                                                              //P Width
+      final int h,                                                              //P Height
+      final Bitmap.Config c)                                                    //P Configuration - null for the default
+     {return w+"x"+h+" "+(c != null ? c : Bitmap.Config.ARGB_8888);
+     }
+
+    synchronized public Bitmap take                                             //M Take a free bitmap with the specified key or return null if there is none
+     (final String key)                                                         //P Dimensions and configuration
+     {final Stack<Bitmap> s = free.get(key);
+      if (s == null || s.size() == 0) return null;
+      final Bitmap b = s.pop();
+      bytes -= b.getByteCount();
+      return b;
+     }
+
+    synchronized public void track                                              //M Track a newly decoded bitmap so that it can be pooled when it is no longer in use
+     (final Bitmap  b,                                                          //P Bitmap
+      final boolean reuse,                                                      //P Whether the bitmap came from the pool
+      final String  key)                                                        //P Dimensions and configuration the bitmap was allocated for - null if it cannot be pooled
+     {if (reuse) ++reused; else ++allocated;
+      used.put(b, new Use(key));
+     }
+
+    synchronized public void retain                                             //M Count a reference to a bitmap - only the owner of a reference may add another
+     (final Bitmap b)                                                           //P Bitmap or null
+     {final Use u = b != null ? used.get(b) : null;
+      if (u != null) ++u.references;
+      assert b == null || u != null || !pooled(b) : "Retained a pooled bitmap";
+     }
+
+    synchronized public void release                                            //M Remove a reference to a bitmap and pool it if it is no longer in use - the only way a tracked bitmap returns to the pool
+     (final Bitmap b)                                                           //P Bitmap or null
+     {final Use u = b != null ? used.get(b) : null;
+      assert b == null || u != null || !pooled(b) : "Released a pooled bitmap";
+      if (u != null && --u.references <= 0)
+       {used.remove(b);
+        offer(b, u.key);
+       }
+     }
+
+    private boolean pooled                                                      //M Whether a bitmap is free in the pool - only used by assertions
+     (final Bitmap b)                                                           //P Bitmap
+     {for(Stack<Bitmap> s: free.values()) if (s.contains(b)) return true;
+      return false;
+     }
+
+    synchronized void offer                                                     //M Add an unused bitmap to the free bitmaps if there is room
+     (final Bitmap b,                                                           //P Bitmap or null
+      final String key)                                                         //P Dimensions and configuration - null if the bitmap cannot be pooled
+     {if (b == null) return;
+      if (key == null || bytes + b.getByteCount() > limit)                      // Leave for the garbage collector
+       {++discarded;
+        return;
+       }
+      Stack<Bitmap> s = free.get(key);
+      if (s == null) free.put(key, s = new Stack<Bitmap>());
+      s.push(b);
+      bytes += b.getByteCount();
+      ++returned;
+     }
+
+    synchronized public void clear()                                            //M Leave all the free bitmaps for the garbage collector
+     {free.clear();
+      bytes = 0;
+     }
+
+    synchronized public String toString()                                       //M Statistics
+     {return "BitmapPool(free bytes="+bytes+", in use="+used.size()+
+             ", reused="+reused+", allocated="+allocated+
+             ", returned="+returned+", discarded="+discarded+")";
+     }
+   } //C BitmapPool
+
+  public static void main(String[] args)                                        //m Tests
+   {testConfig();
+    testDecodedBytes();                                                         // Before any other decodes are in flight
+    testEvictionBeforeSet();
+    testConcurrentMiss();
+    testDecodeOrder();
+    testCancelQueued();
+    testPrepareTiles();
+    testVisibleTiles();
+    testPreview();
+    testRefineScale();
+    testPrefetch();
+   }
+
+  static class TestPhoto extends PhotoBytes                                     //C A photo of X by Y pooled tiles that decodes into the bitmap offered by the pool if there is one and counts its decodes
+   {final String key;                                                           // Name in the bitmap cache - null if not cached
+    final int X, Y, size;                                                       // Tiles in X and Y, size of each tile
+    final AtomicInteger decodes = new AtomicInteger();                          // Number of tiles decoded
+    boolean opaque = false;                                                     // Whether the photo has no transparent pixels
+    volatile CountDownLatch hold = null;                                        // If set, decodes at a sample size below 8, that is of tiles rather than of previews, wait for this latch
+
+    TestPhoto(final String key, final int X, final int Y, final int size)
+     {this.key = key; this.X = X; this.Y = Y; this.size = size;
+     }
+
+    public Draw prepare(final RectF picture, final int inverseFractionalArea)
+     {final Draw d = new Draw(inverseFractionalArea, X, Y)
+       {public void run() {prepareTiles();}
+        public void draw(final Canvas canvas) {drawTiles(canvas, size / bitMapScale);}
+       };
+      picture.set(0, 0, X * size / d.bitMapScale, Y * size / d.bitMapScale);
+      return d;
+     }
+
+    public Bitmap decodeTile(final int j, final int i, final BitmapFactory.Options o)
+     {decodes.incrementAndGet();
+      final CountDownLatch h = hold;
+      if (h != null && o.inSampleSize < 8)
+       {try {h.await();} catch(InterruptedException e) {}
+       }
+      if (o.inBitmap != null) return o.inBitmap;
+      final int s = Math.max(1, o.inSampleSize), w = (size + s - 1) / s;
+      final Bitmap b = new Bitmap(w, w);
+      if (o.inPreferredConfig != null) b.config = o.inPreferredConfig;
+      return b;
+     }
+
+    public String  cacheKey() {return key;}
+    public int     tileSize() {return size;}
+    public boolean opaque()   {return opaque;}
+   } //C TestPhoto
+
+  static TestPhoto testPhoto()                                                  //M A cached photo of two small tiles
+   {return new TestPhoto("test", 2, 1, 4);
+   }
+
+  static void testEvictionBeforeSet()                                           //M A tile found in the cache is not decoded into again if the cache evicts it before the tile is placed
+   {final PhotoBytes p = testPhoto();
+    bitmapCache.setLimit(64);                                                   // Room for one tile
+    final Draw d = p.prepare(new RectF(), 1), e = p.prepare(new RectF(), 1);
+    final Bitmap a = d.cachedTile(0, 0);                                        // Miss
+    d.set(d.bitmap, 0, 0, a);
+    final Bitmap c = e.cachedTile(0, 0);                                        // Hit
+    assert c == a;
+    bitmapCache.setLimit(0);                                                    // Evict the tile and release the only other photo using it before the hit is placed
+    d.release();
+    final Bitmap b = e.decodePooled(0, 1, e.bitmapOptions);
+    assert b != a;                                                              // Still owned by the second photo so not decoded into
+    e.set(e.bitmap, 0, 0, c);
+    e.set(e.bitmap, 0, 1, b);
+    assert e.bitmap[0][0] == a;
+    e.release();
+    assert d.decodePooled(0, 0, d.bitmapOptions) != null;
+    assert bitmapCache.size() == 0;
+   }
+
+  static void testConcurrentMiss()                                              //M When two photos miss on the same tile the second is given the tile cached by the first and its own tile is pooled
+   {final PhotoBytes p = testPhoto();
+    bitmapPool.clear();
+    bitmapCache.setLimit(64);                                                   // Room for one tile
+    final Draw d = p.prepare(new RectF(), 1), e = p.prepare(new RectF(), 1);
+    final String k = d.key(p.cacheKey(), 0, 0, d.bitmapOptions);
+    final Bitmap a = d.decodePooled(0, 0, d.bitmapOptions);                     // Both decode the tile
+    final Bitmap b = e.decodePooled(0, 0, e.bitmapOptions);
+    assert a != b;
+    assert bitmapCache.putRetained(k, a) == a;
+    assert bitmapCache.putRetained(k, b) == a;                                  // The second is given the first tile
+    final Bitmap c = e.decodePooled(0, 1, e.bitmapOptions);
+    assert c == b;                                                              // The second tile was pooled as nothing was using it
+    bitmapCache.setLimit(0);                                                    // Evict the tile before either photo has placed it
+    final Bitmap f = d.decodePooled(0, 1, d.bitmapOptions);
+    assert f != a;                                                              // Both photos still own the evicted tile
+    d.set(d.bitmap, 0, 0, a);
+    e.set(e.bitmap, 0, 0, a);
+    d.set(d.bitmap, 0, 1, f);
+    e.set(e.bitmap, 0, 1, c);
+    d.release();
+    e.release();
+    assert bitmapPool.take(BitmapPool.key(4, 4, null)) != null;
+   }
+
+  static Runnable block                                                         //M A task that occupies a decoding thread until the latch is released
+   (final CountDownLatch latch)                                                 //P Latch
+   {return new Runnable()
+     {public void run()                                                         //O=java.lang.Runnable.run - wait for the latch
+       {try {latch.await();} catch(InterruptedException e) {}
+       }
+     };
+   }
+
+  static void testDecodeOrder()                                                 //M A single decoding thread runs the queued tasks by priority then by order of submission
+   {final DecodeExecutor x = new DecodeExecutor(1);
+    final CountDownLatch busy = new CountDownLatch(1);
+    final StringBuffer order = new StringBuffer();
+    x.submit(block(busy), DecodeExecutor.visible);                              // The first task goes straight to the new thread so the rest queue behind it
+    final String[] names = {"a", "b", "c", "d", "e"};
+    final int[]    prios = {DecodeExecutor.prefetch, DecodeExecutor.visible,
+                            DecodeExecutor.refine,   DecodeExecutor.visible,
+                            DecodeExecutor.prefetch};
+    DecodeExecutor.Task last = null;
+    for(int i = 0; i < names.length; ++i)
+     {final String n = names[i];
+      last = x.submit(new Runnable()
+       {public void run()                                                       //O=java.lang.Runnable.run - record the order
+         {order.append(n);
+         }
+       }, prios[i]);
+     }
+    assert x.queued() == names.length;
+    busy.countDown();
+    try {last.get();} catch(Exception e) {throw new RuntimeException(e);}
+    assert order.toString().equals("bdcae") : order;
+   }
+
+  static void testCancelQueued()                                                //M Cancelling a photo whose preparation is still queued removes it from the decoding threads and releases anyone waiting for it
+   {final CountDownLatch busy = new CountDownLatch(1);
+    for(int i = 0; i < decodeExecutor.threads; ++i)                             // Occupy every decoding thread
+     {decodeExecutor.submit(block(busy), DecodeExecutor.visible);
+     }
+    final Draw d = testPhoto().prepare(new RectF(), 1);
+    d.start();
+    final DecodeExecutor.Task t = d.task;
+    assert decodeExecutor.pool.getQueue().contains(t);
+    d.cancel();
+    assert t.isCancelled();
+    assert !decodeExecutor.pool.getQueue().contains(t);                         // Removed from the queue rather than left to be skipped
+    d.await();                                                                  // Returns rather than waiting for a task that will never run
+    assert !d.isPrepared();
+    busy.countDown();
+   }
+
+  static void testPrepareTiles()                                                //M This thread and the helpers decode every tile of a photo exactly once, and start no decodes once the photo has been cancelled
+   {final TestPhoto p = new TestPhoto(null, 5, 4, 4);                           // Not cached so that every tile has to be decoded
+    final Draw d = p.prepare(new RectF(), 1);
+    d.run();
+    for  (int j = 0; j < p.Y; ++j)
+     {for(int i = 0; i < p.X; ++i) assert d.bitmap[j][i] != null;
+     }
+    assert p.decodes.get() == p.X * p.Y;
+    d.release();
+
+    final Draw e = p.prepare(new RectF(), 1);                                   // Cancelled before it runs
+    e.cancel();
+    e.run();
+    for  (int j = 0; j < p.Y; ++j)
+     {for(int i = 0; i < p.X; ++i) assert e.bitmap[j][i] == null;
+     }
+    assert p.decodes.get() == p.X * p.Y;
+
+    final Draw[] f = new Draw[1];                                               // Cancelled part way through
+    final TestPhoto q = new TestPhoto(null, 5, 4, 4)
+     {public Bitmap decodeTile(final int j, final int i, final BitmapFactory.Options o)
+       {if (decodes.get() == 3) f[0].cancel();
+        return super.decodeTile(j, i, o);
+       }
+     };
+    f[0] = q.prepare(new RectF(), 1);
+    f[0].run();
+    int n = 0;
+    for  (int j = 0; j < q.Y; ++j)
+     {for(int i = 0; i < q.X; ++i) if (f[0].bitmap[j][i] != null) ++n;
+     }
+    assert n == q.decodes.get();                                                // Only the tiles already being decoded when the photo was cancelled were set
+    assert n < q.X * q.Y;
+    f[0].release();
+   }
+
+  static void testVisibleTiles()                                                //M Only the tiles that intersect the clip of the canvas are requested when a photo that decodes its tiles as they become visible is drawn
+   {final TestPhoto p = new TestPhoto(null, 2, 2, 4);
+    final Canvas c = new Canvas()                                               // Clipped to the first tile
+     {public boolean getClipBounds(final Rect bounds)
+       {bounds.set(0, 0, 4, 4);
+        return true;
+       }
+     };
+    final Draw d = p.prepare(new RectF(), 1).visibleOnly();
+    d.draw(c);
+    for  (int j = 0; j < p.Y; ++j)                                              // Nothing is requested until the preparation has finished
+     {for(int i = 0; i < p.X; ++i) assert !d.requested[j][i];
+     }
+    d.start();
+    d.await();
+    d.draw(c);
+    for  (int j = 0; j < p.Y; ++j)
+     {for(int i = 0; i < p.X; ++i) assert d.requested[j][i] == (i == 0 && j == 0);
+     }
+    d.release();
+   }
+
+  static void testPreview()                                                     //M A progressive photo can be shown as soon as its previews, decoded at the preview sample size, are ready and before any of its tiles have been decoded
+   {final TestPhoto p = new TestPhoto(null, 2, 2, 32);
+    p.hold = new CountDownLatch(1);                                             // Hold the decoding of the tiles
+    final Draw d = p.prepare(new RectF(), 1).progressive();
+    assert d.previewScale == 8 && d.previewOptions.inSampleSize == d.previewScale;
+    d.start();
+    d.awaitPreview();
+    for  (int j = 0; j < p.Y; ++j)
+     {for(int i = 0; i < p.X; ++i)
+       {final Bitmap b = d.preview[j][i];
+        assert b != null && b.getWidth() == p.size / d.previewScale;            // Decoded at the preview sample size
+        assert b.getConfig() == d.previewOptions.inPreferredConfig;
+        assert d.bitmap[j][i] == null;                                          // The tiles are still being decoded
+       }
+     }
+    assert !d.isPrepared();
+    p.hold.countDown();
+    d.await();
+    for  (int j = 0; j < p.Y; ++j)
+     {for(int i = 0; i < p.X; ++i)
+       {assert d.bitmap[j][i] != null && d.bitmap[j][i].getWidth() == p.size;
+       }
+     }
+    d.release();
+   }
+
+  static void testRefineScale()                                                 //M The sample size of the refined tiles follows the magnification in powers of two and the refined tiles are released when the magnification changes
+   {final TestPhoto p = new TestPhoto(null, 16, 16, 4);                         // Large enough to be sub sampled by 8
+    final Draw d = p.prepare(new RectF(), 8);
+    assert d.bitMapScale == 8 && d.refineScale() == 8;                          // Not magnified
+    d.magnify(2);   assert d.refineScale() == 4;
+    d.magnify(3);   assert d.refineScale() == 4;                                // Rounded down to a power of two
+    d.magnify(4);   assert d.refineScale() == 2;
+    d.magnify(100); assert d.refineScale() == 1;                                // No finer than full resolution
+
+    d.magnify(4);   assert d.refineScale() == 2;
+    final BitmapFactory.Options o = new BitmapFactory.Options();
+    o.inSampleSize      = 2;
+    o.inPreferredConfig = d.bitmapOptions.inPreferredConfig;
+    final Bitmap b = d.decodePooled(0, 0, o);                                   // A refined tile
+    d.set(d.refined, 0, 0, b);
+    d.refinedRequested[0][0] = true;
+    d.magnify(1);   assert d.refineScale() == 8;
+    assert d.refined[0][0] == null && !d.refinedRequested[0][0];                // Released on the way back
+    assert bitmapPool.take(BitmapPool.key(2, 2, o.inPreferredConfig)) == b;     // Returned to the pool
+    d.release();
+   }
+
+  static void testConfig()                                                      //M Only opaque photos drawn small are decoded at 16 bits per pixel unless high quality has been requested
+   {final TestPhoto p = new TestPhoto(null, 1, 1, 4);
+    final Bitmap.Config a = Bitmap.Config.ARGB_8888, r = Bitmap.Config.RGB_565;
+    assert p.config(smallArea) == a;                                            // Might be transparent
+    p.opaque = true;
+    assert p.config(smallArea)     == r;
+    assert p.config(smallArea * 4) == r;
+    assert p.config(smallArea - 1) == a;                                        // Drawn too large
+    p.highQuality = true;
+    assert p.config(smallArea)     == a;
+   }
+
+  static void testDecodedBytes()                                                //M The bytes of each decoded bitmap are counted for the photo and for all photos
+   {final TestPhoto p = new TestPhoto(null, 1, 1, 4);
+    final long t = totalDecodedBytes();
+    final Draw d = p.prepare(new RectF(), 1);
+    final Bitmap a = d.decodePooled(0, 0, d.bitmapOptions);
+    assert a.getByteCount() == 4 * 4 * 4;
+    assert p.decodedBytes() == 64 && totalDecodedBytes() - t == 64;
+    p.opaque = true;
+    final Draw e = p.prepare(new RectF(), smallArea);                           // Drawn small enough to decode at 16 bits per pixel
+    final Bitmap b = e.decodePooled(0, 0, e.bitmapOptions);
+    assert b.getByteCount() == 4 * 4 * 2;
+    assert p.decodedBytes() == 96 && totalDecodedBytes() - t == 96;
+    bitmapPool.release(a);
+    bitmapPool.release(b);
+   }
+
+  static void testPrefetch()                                                    //M Prefetch the photos in order while they fit in the budget and release them all when cancelled
+   {final Stack<PhotoBytes> photos = new Stack<PhotoBytes>();
+    for(int i = 0; i < 3; ++i) photos.push(new TestPhoto("prefetch"+i, 2, 2, 4));
+    photos.add(1, null);                                                        // Photos without a bitmap are skipped over
+    final Prefetch p = new Prefetch(photos, 1, 2 * 8 * 8 * 4 + 1);              // Room for two photos of 8 by 8 pixels
+    assert p.bytes == 2 * 8 * 8 * 4 && p.skipped == 1;
+    assert p.draws.size() == 2;
+    final Stack<Draw> draws = new Stack<Draw>();
+    draws.addAll(p.draws);
+    p.cancel();
+    assert p.draws.size() == 0;
+    for(Draw d: draws)
+     {assert d.cancelled && d.released;
+      for  (int j = 0; j < d.bitmap.length;    ++j)
+       {for(int i = 0; i < d.bitmap[j].length; ++i) assert d.bitmap[j][i] == null;
+       }
+     }
+   }
+
+  static void say(Object...O) {Say.say(O);}
  } //C PhotoBytes
@@ -17,21 +17,28 @@ public class PhotoBytesJP extends PhotoBytes
    {this.photoBytes = photoBytes;
    }
 
+  public Bitmap decodeTile                                                      //O=com.appaapps.PhotoBytes.decodeTile - decode the only tile
+   (final int j,                                                                //P Tile row - always zero
+    final int i,                                                                //P Tile column - always zero
+    final BitmapFactory.Options options)                                        //P Decoding options
+   {final byte[] b = photoBytes;                                                // Finalize and shorten
+    return BitmapFactory.decodeByteArray(b, 0, b.length, options);
+   }
+
   public Draw prepare                                                           //O=com.appapps.PhotoBytes.prepare - prepare to draw the photo
    (final RectF picture,                                                        //P Rectangle in which to record the dimensions of  bitmap
     final int   proposedBitMapScale)                                            //P Proposed scale to apply to the bitmap
    {return new Draw(proposedBitMapScale, 1, 1)                                  // Describe how hte photo is to be drawn
-     {public void run()                                                         //O=Thread.run
+     {public void run()                                                         //O=java.lang.Runnable.run
        {bitmapOptions.inSampleSize = bitMapScale;                               // Use actual bitmap scale
-        final byte[] b = photoBytes;                                            // Finalize and shorten
-        final Bitmap m =
-          bitmap[0][0] = BitmapFactory.decodeByteArray                          // Decode the bitmap
-           (b, 0, b.length, bitmapOptions);
+        final Bitmap m = cachedTile(0, 0);                                      // Decode the bitmap
+        set(bitmap, 0, 0, m);
         picture.set(0, 0, m.getWidth(), m.getHeight());
        }
       public void draw                                                          //O=com.appaapps.PhotoBytes.Draw.draw - Draw the photo
        (final Canvas canvas)                                                    //P Canvas - scaled and translated so that we can draw at coordinates (0,0) in the size of the photo
-       {canvas.drawBitmap(bitmap[0][0], 0, 0, null);
+       {final Bitmap b = bitmap[0][0];
+        if (b != null) canvas.drawBitmap(b, 0, 0, null);                        // Draw the bitmap once it has been prepared
        }
      };
    }
@@ -10,8 +10,10 @@ import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.RectF;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Stack;
-import java.util.TreeMap;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
@@ -19,59 +21,86 @@ import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 
 public class PhotoBytesJpx extends PhotoBytes                                   //C Photo encoded as jpx
- {final public byte[][][] photoBytes;                                           // Tiles comprising this image
+ {final public byte[][][] photoBytes;                                           // Tiles comprising this image - null if the tiles are loaded lazily
+  final public String[][] tileFiles;                                            // File containing each tile
+  final public boolean lazy;                                                    // Load the bytes of each tile when the photo is prepared rather than during construction
   final public int height, width, size, X, Y;                                   // Height, width of image in pixels, size of each picture in tiles
   final public String source;                                                   // Source of the image as specified in the jpx manifest file
   final public String name;                                                     // Name of photo as specified during construction
+  final public static TileByteCache tileByteCache =                             // Recently used tile bytes shared by all the lazily loaded photos
+    new TileByteCache(4 * 1024 * 1024);
+
+  public PhotoBytesJpx                                                          //c Constructor - load all the tiles now
+   (final Collection<String> files,                                             //P File names in assets - preferably just those from Assets.withPrefix(Key+"/")
+    final String             Key)                                               //P Select the entries that start with this key
+   {this(files, Key, false);
+   }
 
   public PhotoBytesJpx                                                          //c Constructor
-   (final Stack<String> files,                                                  //P File names in assets
-    final String        Key)                                                    //P Select the entries that start with this key
+   (final Collection<String> files,                                             //P File names in assets - preferably just those from Assets.withPrefix(Key+"/")
+    final String             Key,                                               //P Select the entries that start with this key
+    final boolean            lazy)                                              //P Load the tiles when they are needed rather than now
    {final String key = Key + "/";                                               // Folder name
     final int N = key.length();
     int height = 0, width = 0, size = 0, X = 0, Y = 0;
     String source = null;
-    byte[][][]a = null;                                                         // Tiles in image - unfinalized
+    final Stack<String> tiles = new Stack<String>();                            // Files containing tiles
+    final Stack<int[]>  where = new Stack<int[]>();                             // Coordinates of each tile
 
-    for(int pass = 0; pass < 2; ++pass)                                         // Arrange the tiles
-     {for(String k: files)                                                      // Each entry in assets
-       {if  (k.endsWith("/"))   continue;                                       // Directory
-        if (!k.startsWith(key)) continue;                                       // Entries for the specified image
-        final String s = k.substring(N);                                        // File name minus folder
-        if (s.startsWith("jpx.data"))                                           // Process manifest entries describing photo
-         {try
-           {final String L = new String(load(k), StandardCharsets.UTF_8);
-            for(final String l : L.split("\\n"))
-             {final String[]w = l.split("\\s+");
-              if      (w[0].equalsIgnoreCase("height")) height = s2i(w[1]);
-              else if (w[0].equalsIgnoreCase("width"))  width  = s2i(w[1]);
-              else if (w[0].equalsIgnoreCase("size"))   size   = s2i(w[1]);
-              else if (w[0].equalsIgnoreCase("source")) source =     w[1];
-             }
-            continue;
-           }
-          catch(Exception e)
-           {System.err.println(e);
-            e.printStackTrace();
+    for(String k: files)                                                        // Each entry in assets
+     {if  (k.endsWith("/"))   continue;                                         // Directory
+      if (!k.startsWith(key)) continue;                                         // Entries for the specified image
+      final String s = k.substring(N);                                          // File name minus folder
+      if (s.startsWith("jpx.data"))                                             // Process manifest entries describing photo
+       {try
+         {final String L = new String(load(k), StandardCharsets.UTF_8);
+          for(final String l : L.split("\\n"))
+           {final String[]w = l.split("\\s+");
+            if      (w[0].equalsIgnoreCase("height")) height = s2i(w[1]);
+            else if (w[0].equalsIgnoreCase("width"))  width  = s2i(w[1]);
+            else if (w[0].equalsIgnoreCase("size"))   size   = s2i(w[1]);
+            else if (w[0].equalsIgnoreCase("source")) source =     w[1];
            }
          }
-        else
-         {final String[]w = s.split("_|\\.");
-          try
-           {final int y = s2i(w[0]), x = s2i(w[1]);                             // Coordinates of tile
-            if (x > X) X = x;
-            if (y > Y) Y = y;
-            if (pass == 1) a[y-1][x-1] = load(k);                               // Bytes for tile
-           }
-          catch(Exception e)
-           {System.err.println("Unable to parse: "+s+"\n"+e);
-            e.printStackTrace();
-           }
+        catch(Exception e)
+         {System.err.println(e);
+          e.printStackTrace();
+         }
+       }
+      else
+       {final String[]w = s.split("_|\\.");
+        try
+         {final int y = s2i(w[0]), x = s2i(w[1]);                               // Coordinates of tile
+          if (x > X) X = x;
+          if (y > Y) Y = y;
+          tiles.push(k); where.push(new int[]{y, x});                           // Record tile position
+         }
+        catch(Exception e)
+         {System.err.println("Unable to parse: "+s+"\n"+e);
+          e.printStackTrace();
+         }
+       }
+     }
+
+    final String[][] t = new String[Y][X];                                      // Arrange the tiles
+    for(int i = 0; i < tiles.size(); ++i)
+     {final int[]w = where.elementAt(i);
+      if (w[0] > 0 && w[1] > 0) t[w[0]-1][w[1]-1] = tiles.elementAt(i);
+     }
+
+    byte[][][]a = null;                                                         // Tiles in image - unfinalized
+    if (!lazy)                                                                  // Load the bytes of each tile now
+     {a = new byte[Y][X][];
+      for  (int j = 0; j < Y; ++j)
+       {for(int i = 0; i < X; ++i)
+         {if (t[j][i] != null) a[j][i] = load(t[j][i]);                         // Bytes for tile
          }
-        if (pass == 0) a = new byte[Y][X][];                                    // Allocate arrays of tiles
        }
      }
+
     this.photoBytes = a;                                                        // Finalize photo bytes
+    this.tileFiles  = t;                                                        // Finalize tile files
+    this.lazy   = lazy;                                                         // Finalize loading mode
     this.height = height;                                                       // Finalize height of image
     this.width  = width;                                                        // Finalize width of image
     this.size   = size;                                                         // Finalize size of each tile
@@ -81,6 +110,87 @@ public class PhotoBytesJpx extends PhotoBytes
     this.Y      = Y;                                                            // Number of tiles in Y
    }
 
+  public byte[] tileBytes                                                       //M Get the bytes of a tile either from memory or, if lazy, from the tile cache or by loading the tile
+   (final int j,                                                                //P Tile row
+    final int i)                                                                //P Tile column
+   {if (!lazy) return photoBytes[j][i];                                         // Already loaded
+    final String f = tileFiles[j][i];
+    final byte[] c = tileByteCache.get(f);                                      // Recently used
+    if (c != null) return c;
+    final byte[] b = load(f);                                                   // Load the tile
+    tileByteCache.put(f, b);
+    return b;
+   }
+
+  public Bitmap decodeTile                                                      //O=com.appaapps.PhotoBytes.decodeTile - decode a tile from its bytes
+   (final int j,                                                                //P Tile row
+    final int i,                                                                //P Tile column
+    final BitmapFactory.Options options)                                        //P Decoding options
+   {final byte[] b = tileBytes(j, i);
+    return BitmapFactory.decodeByteArray(b, 0, b.length, options);
+   }
+
+  public String cacheKey()                                                      //O=com.appaapps.PhotoBytes.cacheKey - name of the photo in the bitmap cache
+   {return name;
+   }
+
+  public int tileSize()                                                         //O=com.appaapps.PhotoBytes.tileSize - decode tiles into pooled bitmaps
+   {return size;
+   }
+
+  public boolean opaque()                                                       //O=com.appaapps.PhotoBytes.opaque - jpx tiles are jpgs which have no alpha channel
+   {return true;
+   }
+
+  public static class TileByteCache                                             //C Least recently used tile bytes limited by their total size
+   {final LinkedHashMap<String,byte[]> tiles =                                  // Tile bytes by file name in order of last use
+      new LinkedHashMap<String,byte[]>(16, 0.75f, true);
+    long limit;                                                                 // Maximum number of bytes to cache - zero disables the cache
+    long bytes = 0;                                                             // Number of bytes currently cached
+
+    public TileByteCache                                                        //c Create a tile cache
+     (final long limit)                                                         //P Maximum number of bytes to cache
+     {this.limit = limit;
+     }
+
+    synchronized public byte[] get                                              //M Get the bytes of a tile if they are in the cache
+     (final String file)                                                        //P File containing the tile
+     {return tiles.get(file);
+     }
+
+    synchronized public void put                                                //M Add the bytes of a tile to the cache and discard the least recently used tiles if the cache is over its limit
+     (final String file,                                                        //P File containing the tile
+      final byte[] b)                                                           //P Bytes of the tile
+     {if (b == null || b.length > limit) return;                                // Too big to cache
+      final byte[] o = tiles.put(file, b);
+      if (o != null) bytes -= o.length;
+      bytes += b.length;
+      final Iterator<byte[]> i = tiles.values().iterator();                     // Least recently used first
+      while(bytes > limit && i.hasNext())
+       {bytes -= i.next().length;
+        i.remove();
+       }
+     }
+
+    synchronized public void setLimit                                           //M Change the limit on the number of bytes cached
+     (final long limit)                                                         //P Maximum number of bytes to cache - zero disables the cache
+     {this.limit = limit;
+      final Iterator<byte[]> i = tiles.values().iterator();
+      while(bytes > limit && i.hasNext())
+       {bytes -= i.next().length;
+        i.remove();
+       }
+     }
+
+    synchronized public long bytes()                                            //M Number of bytes currently cached
+     {return bytes;
+     }
+
+    synchronized public int size()                                              //M Number of tiles currently cached
+     {return tiles.size();
+     }
+   } //C TileByteCache
+
   public byte[] loadAsset                                                       //M Load bytes from a file in assets
    (String file)                                                                //P File name to load
    {final int N = 1024;
@@ -124,37 +234,25 @@ public class PhotoBytesJpx extends PhotoBytes
 
   public byte[] load                                                            //M Load bytes from a file
    (String file)                                                                //P File name to load
-   {if (file.startsWith("/home/phil/")) return loadLocal(file);
-    else                                return loadAsset(file);
+   {if (file.startsWith("/")) return loadLocal(file);                           // Asset names are never absolute so this must be a file on the test computer
+    else                       return loadAsset(file);
    }
 
   public Draw prepare                                                           //O=com.appapps.PhotoBytes.prepare - prepare to draw the photo
    (final RectF picture,                                                        //P Rectangle in which to record the dimensions of bitmap
     final int   proposedBitMapScale)                                            //P Proposed scale to apply to the bitmap
    {final Draw d = new Draw(proposedBitMapScale, X, Y)                          // Decompress the bitmap
-     {public void run()                                                         //O=Thread.run Prepare bitmaps to display photo
-       {final int s = getActualBitMapScale();
-        picture.set(0, 0, width / s, height / s);                               // Size of bitmap after any scaling
-
-        for  (int j = 0; j < Y; ++j)                                            // Each tile
-         {for(int i = 0; i < X; ++i)
-           {final byte[] b = photoBytes[j][i];                                  // Prepare bitmap for tile
-            final Bitmap B = bitmap[j][i] = BitmapFactory.decodeByteArray
-             (b, 0, b.length, bitmapOptions);
-           }
-         }
+     {public void run()                                                         //O=java.lang.Runnable.run Prepare bitmaps to display photo
+       {prepareTiles();                                                         // Decode the tiles in parallel
        }
 
       public void draw                                                          //M Draw the photo
        (final Canvas canvas)                                                    //P Canvas - scaled and translated so that we can draw at coordinates (0,0) in the size of the photo
-       {final int s = size / getActualBitMapScale();
-        for  (int j = 0; j < Y; ++j)                                            // Draw each sub bit map
-         {for(int i = 0; i < X; ++i)
-           {canvas.drawBitmap(bitmap[j][i], i*s, j*s, null);                    // Place each bitmap
-           }
-         }
+       {drawTiles(canvas, size / getActualBitMapScale());                       // Draw the visible tiles
        }
      };
+    final int s = d.getActualBitMapScale();
+    picture.set(0, 0, width / s, height / s);                                   // Size of bitmap after any scaling is known from the manifest so the photo can be laid out before any tiles are decoded
     return d;
    }
 
@@ -186,6 +284,19 @@ public class PhotoBytesJpx extends PhotoBytes
    {Stack<String> files = fileList();
     PhotoBytesJpx photo = new PhotoBytesJpx(files, "/home/phil/AppaAppsGitHubPhotoApp/build/assets/images/Autumn L");
     assert  (""+photo).equals("{Source=>/home/phil/AppaAppsGitHubPhotoApp/images/Autumn, Size=>256, Height=>768, Width=>1024, X=>4, Y=>3}");
+
+    PhotoBytesJpx lazy = new PhotoBytesJpx(files, "/home/phil/AppaAppsGitHubPhotoApp/build/assets/images/Autumn L", true);
+    assert  (""+lazy).equals(""+photo);
+    assert  lazy.photoBytes == null;
+    assert  lazy.tileBytes(2, 3).length == photo.tileBytes(2, 3).length;
+    assert  tileByteCache.size() == 1;
+
+    final TileByteCache c = new TileByteCache(10);                              // Least recently used tiles are discarded first
+    c.put("a", new byte[4]); c.put("b", new byte[4]); c.get("a");
+    c.put("c", new byte[4]);
+    assert  c.get("b") == null && c.get("a") != null && c.bytes() == 8;
+    c.setLimit(0);
+    assert  c.size() == 0;
     say("Hello World\n");
    }
 
@@ -0,0 +1,216 @@
+//------------------------------------------------------------------------------
+// Photo encoded as an array of tiles packed into one memory mapped file
+// Philip R Brenan at gmail dot com, Appa Apps Ltd, 2020
+//------------------------------------------------------------------------------
+package com.appaapps;
+
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class PhotoBytesJpxPacked extends PhotoBytes                             //C Photo encoded as jpx tiles packed into a single file: a header of 32 bit big endian integers: "JPXP", version, width, height, size, X, Y followed by X*Y+1 offsets from the start of the file to each tile in row order and to the end of the last tile, followed by the bytes of each tile
+ {final static int magic   = 0x4a505850;                                        // "JPXP"
+  final static int version = 1;                                                 // Version of the packed format
+  final static int header  = 7;                                                 // Number of integers in the header before the offsets
+  final public ByteBuffer pack;                                                 // The memory mapped packed file
+  final public int[] offsets;                                                   // Offset of each tile in row order plus the offset of the end of the last tile
+  final public int height, width, size, X, Y;                                   // Height, width of image in pixels, size of each picture in tiles
+  final public String name;                                                     // Name of the packed file
+
+  public PhotoBytesJpxPacked                                                    //c Constructor
+   (final String file)                                                          //P Name of the packed file either in assets or, for testing, on the local computer
+   {final ByteBuffer p = map(file);                                             // Map the file
+    int height = 0, width = 0, size = 0, X = 0, Y = 0;
+    int[] o = new int[0];
+    if (p != null && p.limit() >= header * 4 && p.getInt(0) == magic &&
+        p.getInt(4) == version)                                                 // Read the header
+     {width  = p.getInt( 8);
+      height = p.getInt(12);
+      size   = p.getInt(16);
+      X      = p.getInt(20);
+      Y      = p.getInt(24);
+      o      = new int[X * Y + 1];
+      for(int i = 0; i < o.length; ++i) o[i] = p.getInt((header + i) * 4);      // Tile offsets
+     }
+    else say("Not a packed jpx file: "+file);
+
+    this.pack    = p;                                                           // Finalize packed bytes
+    this.offsets = o;                                                           // Finalize tile offsets
+    this.height  = height;                                                      // Finalize height of image
+    this.width   = width;                                                       // Finalize width of image
+    this.size    = size;                                                        // Finalize size of each tile
+    this.name    = file;                                                        // Finalize name of photo
+    this.X       = X;                                                           // Number of tiles in X
+    this.Y       = Y;                                                           // Number of tiles in Y
+   }
+
+  static ByteBuffer map                                                         //M Memory map a packed file: from the local computer if testing, else directly from the apk if the asset is uncompressed, else via a copy of the asset in a real file
+   (final String file)                                                          //P File name to map
+   {if (file.startsWith("/"))                                                   // Asset names are never absolute so this must be a file on the test computer
+     {try
+       {final FileChannel c = new RandomAccessFile(file, "r").getChannel();
+        final ByteBuffer   m = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());
+        c.close();                                                              // The mapping remains valid after the channel is closed
+        return m;
+       }
+      catch (Exception e)
+       {say("Failed to map file: "+file);
+        e.printStackTrace();
+        return null;
+       }
+     }
+
+    try                                                                         // Uncompressed asset mapped directly from the apk
+     {final AssetFileDescriptor a = Assets.context.getAssets().openFd(file);
+      final FileChannel c = new FileInputStream(a.getFileDescriptor()).getChannel();
+      final ByteBuffer  m = c.map
+       (FileChannel.MapMode.READ_ONLY, a.getStartOffset(), a.getLength());
+      a.close();                                                                // Closes the descriptor the channel was opened on - the mapping remains valid
+      return m;
+     }
+    catch (Exception e) {}                                                      // Compressed assets cannot be opened as file descriptors
+
+    final String r = file.replaceAll("/", "_");                                 // Name of the real file that Assets.copyAssetsFileToRealFile() copies the asset to
+    try                                                                         // Map the copy made on an earlier start if it is complete
+     {final ByteBuffer m = mapRealFile(r);
+      if (complete(m)) return m;
+     }
+    catch (Exception e) {}                                                      // No copy yet
+
+    try                                                                         // Copy the asset to a real file once and map that instead
+     {Assets.copyAssetsFileToRealFile(file);
+      return mapRealFile(r);
+     }
+    catch (Exception e)
+     {say("Failed to map asset: "+file);
+      e.printStackTrace();
+     }
+    return null;
+   }
+
+  static ByteBuffer mapRealFile                                                 //M Memory map a real file belonging to the app
+   (final String file)                                                          //P Name of the real file
+    throws IOException                                                          //T Unable to open or map the file
+   {final FileChannel c = Assets.context.openFileInput(file).getChannel();
+    final ByteBuffer  m = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());
+    c.close();                                                                  // The mapping remains valid after the channel is closed
+    return m;
+   }
+
+  static boolean complete                                                       //M Whether a mapped file is a packed jpx file whose length is the offset of the end of its last tile as recorded in its header, so that a copy cut short by an earlier failure is not reused
+   (final ByteBuffer p)                                                         //P Mapped file
+   {if (p == null || p.limit() < header * 4 || p.getInt(0) != magic ||
+        p.getInt(4) != version) return false;
+    final long n = header + (long)p.getInt(20) * p.getInt(24);                  // Index of the offset of the end of the last tile
+    return n >= header && (n + 1) * 4 <= p.limit() && p.getInt((int)n * 4) == p.limit();
+   }
+
+  public ByteBuffer tile                                                        //M The bytes of a tile as a slice of the packed file without copying them
+   (final int j,                                                                //P Tile row
+    final int i)                                                                //P Tile column
+   {final int k = j * X + i;                                                    // Index of tile
+    final ByteBuffer b = pack.duplicate();                                      // Independent position and limit so that tiles can be sliced concurrently
+    b.limit(offsets[k+1]);
+    b.position(offsets[k]);
+    return b.slice();
+   }
+
+  public String cacheKey()                                                      //O=com.appaapps.PhotoBytes.cacheKey - name of the photo in the bitmap cache
+   {return name;
+   }
+
+  public int tileSize()                                                         //O=com.appaapps.PhotoBytes.tileSize - decode tiles into pooled bitmaps
+   {return size;
+   }
+
+  public boolean opaque()                                                       //O=com.appaapps.PhotoBytes.opaque - jpx tiles are jpgs which have no alpha channel
+   {return true;
+   }
+
+  public Bitmap decodeTile                                                      //O=com.appaapps.PhotoBytes.decodeTile - decode a tile by streaming it from its slice of the packed file
+   (final int j,                                                                //P Tile row
+    final int i,                                                                //P Tile column
+    final BitmapFactory.Options options)                                        //P Decoding options
+   {return BitmapFactory.decodeStream
+     (new ByteBufferInputStream(tile(j, i)), null, options);
+   }
+
+  static class ByteBufferInputStream extends InputStream                        //C Read a byte buffer as a stream so that the decoder can read a tile directly from the mapped file
+   {final ByteBuffer b;                                                         // Buffer being read
+    ByteBufferInputStream                                                       //c Create a stream over a buffer
+     (final ByteBuffer b)                                                       //P Buffer
+     {this.b = b;
+     }
+    public int available()                                                      //O=java.io.InputStream.available - bytes remaining
+     {return b.remaining();
+     }
+    public int read()                                                           //O=java.io.InputStream.read - read one byte
+     {return b.hasRemaining() ? b.get() & 0xff : -1;
+     }
+    public int read                                                             //O=java.io.InputStream.read - read several bytes
+     (final byte[] a,                                                           //P Target array
+      final int    o,                                                           //P Offset in target
+      final int    n)                                                           //P Maximum number of bytes to read
+     {if (!b.hasRemaining()) return -1;
+      final int l = Math.min(n, b.remaining());
+      b.get(a, o, l);
+      return l;
+     }
+   } //C ByteBufferInputStream
+
+  public Draw prepare                                                           //O=com.appapps.PhotoBytes.prepare - prepare to draw the photo
+   (final RectF picture,                                                        //P Rectangle in which to record the dimensions of bitmap
+    final int   proposedBitMapScale)                                            //P Proposed scale to apply to the bitmap
+   {return prepare(picture, proposedBitMapScale, config(proposedBitMapScale));
+   }
+
+  public Draw prepare                                                           //M Prepare to draw the photo in the specified pixel format
+   (final RectF         picture,                                                //P Rectangle in which to record the dimensions of bitmap
+    final int           proposedBitMapScale,                                    //P Proposed scale to apply to the bitmap
+    final Bitmap.Config config)                                                 //P Pixel format to decode the tiles in
+   {final Draw d = new Draw(proposedBitMapScale, X, Y, config)                  // Decompress the bitmap
+     {public void run()                                                         //O=java.lang.Runnable.run Prepare bitmaps to display photo
+       {prepareTiles();                                                         // Decode the tiles in parallel
+       }
+
+      public void draw                                                          //M Draw the photo
+       (final Canvas canvas)                                                    //P Canvas - scaled and translated so that we can draw at coordinates (0,0) in the size of the photo
+       {drawTiles(canvas, size / getActualBitMapScale());                       // Draw the visible tiles
+       }
+     };
+    final int s = d.getActualBitMapScale();
+    picture.set(0, 0, width / s, height / s);                                   // Size of bitmap after any scaling is known from the manifest so the photo can be laid out before any tiles are decoded
+    return d;
+   }
+
+  public String toString()                                                      //M Convert to string
+   {final StringBuilder s = new StringBuilder();
+    s.append("{Size=>"   +size);
+    s.append(", Height=>"+height);
+    s.append(", Width=>" +width);
+    s.append(", X=>"     +X);
+    s.append(", Y=>"     +Y);
+    s.append("}");
+    return s.toString();
+   }
+
+  public static void main(String[] args)                                        //m Test
+   {final PhotoBytesJpxPacked photo = new PhotoBytesJpxPacked
+     ("/home/phil/AppaAppsGitHubPhotoApp/build/assets/images/Autumn L/jpx.pack");
+    assert (""+photo).equals("{Size=>256, Height=>768, Width=>1024, X=>4, Y=>3}");
+    assert photo.tile(0, 0).get(0) == (byte)0xff;                               // Each tile is a jpg
+    assert photo.offsets[12] == photo.pack.limit();                             // The last offset is the end of the file
+    say("Hello World\n");
+   }
+
+  static void say(Object...O) {Say.say(O);}
+ } //C PhotoBytesJpxPacked
@@ -0,0 +1,97 @@
+//------------------------------------------------------------------------------
+// Photo packed at successively halved resolutions
+// Philip R Brenan at gmail dot com, Appa Apps Ltd, 2020
+//------------------------------------------------------------------------------
+package com.appaapps;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.RectF;
+
+import java.util.Collection;
+import java.util.Stack;
+import java.util.TreeSet;
+
+public class PhotoBytesPyramid extends PhotoBytes                               //C Photo packed as jpx.pack at full resolution and as jpx2.pack, jpx4.pack, ... at each halving of the resolution so that a photo drawn small decodes a lower level rather than sub sampling the full resolution tiles
+ {final public PhotoBytesJpxPacked[] levels;                                    // Level k holds the photo reduced by a factor of 2**k
+  final public String name;                                                     // Name of the folder containing the levels
+
+  public PhotoBytesPyramid                                                      //c Constructor
+   (final Collection<String> files,                                             //P Files in the folder containing the levels
+    final String name)                                                          //P Name of the folder
+   {final Stack<PhotoBytesJpxPacked> l = new Stack<PhotoBytesJpxPacked>();
+    l.push(new PhotoBytesJpxPacked(level(name, 0)));                            // Full resolution
+    for(int k = 1; files.contains(level(name, k)); ++k)                         // Each lower resolution present
+     {l.push(new PhotoBytesJpxPacked(level(name, k)));
+     }
+    this.levels = l.toArray(new PhotoBytesJpxPacked[l.size()]);                 // Finalize levels
+    this.name   = name;                                                         // Finalize name
+   }
+
+  static String level                                                           //M File name of a level
+   (final String name,                                                          //P Name of the folder containing the levels
+    final int    k)                                                             //P Level: the photo is reduced by a factor of 2**k
+   {return name+"/jpx"+(k > 0 ? ""+(1 << k) : "")+".pack";
+   }
+
+  public int chooseLevel                                                        //M The lowest resolution level that can be decoded at a sample size of at least one while still giving the resolution the full resolution photo would be decoded at
+   (final int inverseFractionalArea)                                            //P The approximate inverse of the fraction of the area of the screen covered by this image
+   {final PhotoBytesJpxPacked f = levels[0];
+    final int s = actualBitMapScale(inverseFractionalArea, f.X, f.Y);           // Sample size the full resolution tiles would be decoded at
+    int k = 0;
+    while(k + 1 < levels.length && 2 << k <= s) ++k;                            // Halve while the level is still at least as large as the sub sampled full resolution photo
+    return k;
+   }
+
+  public Draw prepare                                                           //O=com.appapps.PhotoBytes.prepare - prepare to draw the photo from the smallest level that fills the drawing area
+   (final RectF picture,                                                        //P Rectangle in which to record the dimensions of bitmap
+    final int   inverseFractionalArea)                                          //P The approximate inverse of the fraction of the area of the screen covered by  this image
+   {final int s = actualBitMapScale                                             // Sample size of the full resolution tiles
+     (inverseFractionalArea, levels[0].X, levels[0].Y);
+    final int k = chooseLevel(inverseFractionalArea);
+    return levels[k].prepare(picture, s >> k,                                   // The rest of the sub sampling from the chosen level
+      config(inverseFractionalArea));                                           // The pixel format depends on the area the photo is drawn in, not on the sub sampling left after choosing the level
+   }
+
+  public Bitmap decodeTile                                                      //O=com.appaapps.PhotoBytes.decodeTile - decode a full resolution tile
+   (final int j,                                                                //P Tile row
+    final int i,                                                                //P Tile column
+    final BitmapFactory.Options options)                                        //P Decoding options
+   {return levels[0].decodeTile(j, i, options);
+   }
+
+  public boolean opaque()                                                       //O=com.appaapps.PhotoBytes.opaque - the levels are packed jpx tiles which have no alpha channel
+   {return true;
+   }
+
+  public long decodedBytes()                                                    //O=com.appaapps.PhotoBytes.decodedBytes - bytes decoded from all the levels
+   {long n = decodedBytes.get();
+    for(PhotoBytes l: levels) n += l.decodedBytes();
+    return n;
+   }
+
+  public String toString()                                                      //M Convert to string
+   {final StringBuilder s = new StringBuilder();
+    s.append("{Levels=>"+levels.length);
+    s.append(", Full=>" +levels[0]);
+    s.append("}");
+    return s.toString();
+   }
+
+  public static void main(String[] args)                                        //m Test
+   {final String n = "/home/phil/AppaAppsGitHubPhotoApp/build/assets/images/Autumn L";
+    final TreeSet<String> f = new TreeSet<String>();
+    for(String s: new java.io.File(n).list()) f.add(n+"/"+s);
+    final PhotoBytesPyramid photo = new PhotoBytesPyramid(f, n);
+    assert photo.levels.length == 3;                                            // 1024 by 768, 512 by 384 in 2 by 2 tiles, 256 by 192 in one tile
+    assert photo.levels[1].X == 2 && photo.levels[1].Y == 2;
+    assert photo.chooseLevel( 1) == 0;                                          // Full screen
+    assert photo.chooseLevel(16) == 1;                                          // A 3 by 3 grid: the thresholds sub sample this photo by two
+    final RectF r = new RectF();
+    photo.prepare(r, 16);
+    assert r.width() == 512 && r.height() == 384;                               // Laid out at the same size as sub sampling the full resolution tiles
+    say("Hello World\n");
+   }
+
+  static void say(Object...O) {Say.say(O);}
+ } //C PhotoBytesPyramid
@@ -13,18 +13,26 @@ import android.graphics.Point;
 import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.Typeface;
 import java.io.ByteArrayOutputStream;
 import java.util.Random;
 import java.util.Stack;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Svg                                                                //C Structured Vector Graphics. Svg elements occupy fractions of the canvas which is assumed to have the approximate aspect ratio specified when creating the Svg. The elements then try to fit themselves into their fractional areas as best they can.
  {private static Svg lastShown = null;                                          // The last Svg shown
+  private static Svg lastDrawn = null;                                          // The last Svg drawn by a call to draw() other than from within another Svg
   private final static Themes themes = new Themes();                            // Colour themes generator
   private static Themes.Theme defaultTheme = themes.tartan();                   // Create a default theme for this element
   private final ColoursTransformed coloursTransformed =new ColoursTransformed();// Colour transformer
   private final Stack<Element> elements = new Stack<Element>();                 // Elements in the Svg
-  private final Stack<Thread>  prepare  = new Stack<Thread>();                  // Threads preparing parts of the SVG and should be waited upon before the Svg is used
+  private final Stack<PhotoBytes.Draw> prepare =                                // Bitmaps being prepared on the decode executor for the Svg that should be waited upon before the Svg is used
+    new Stack<PhotoBytes.Draw>();
+  private final static ConcurrentLinkedQueue<Svg> discarded =                   // Svgs no longer wanted whose bitmaps should be released on the display thread once they can no longer be drawn
+    new ConcurrentLinkedQueue<Svg>();
   private final static Random  random   = new Random();                         // Random number generator
   private final static float
     compassRoseGrowTime      = 5,                                               // The rate in pixels per second at which the compass rose grows
@@ -36,10 +44,25 @@ public class Svg
     textSize                 =  128,                                            // The size of text used before scaling to fit the drawing area - this number needs to be large enough to produce clear characters but not so large that the hardware drawing layer does not complain
     textStrokeWidth          =    8,                                            // Stroke width used for drawing background of text
     textBackColour           = ColoursTransformed.black;                        // Text background colour
+  private final static int[][][]breakingLayoutTable =                           // For each number of words, the number of words on each line of every way of breaking them into lines - shared by every text element rather than rebuilt each time one is created
+   { {{1}}, {{2}, {1, 1}}, {{3}, {2, 1}, {1, 2}, {1, 1, 1}}, { {4}, {3, 1}, {2, 2}, {2, 1, 1}, {1, 3}, {1, 2, 1}, {1, 1, 2}, {1, 1, 1, 1}, }, { {5}, {4, 1}, {3, 2}, {3, 1, 1}, {2, 3}, {2, 2, 1}, {2, 1, 2}, {2, 1, 1, 1}, {1, 4}, {1, 3, 1}, {1, 2, 2}, {1, 2, 1, 1}, {1, 1, 3}, {1, 1, 2, 1}, {1, 1, 1, 2}, {1, 1, 1, 1, 1}, }, { {6}, {5, 1}, {4, 2}, {4, 1, 1}, {3, 3}, {3, 2, 1}, {3, 1, 2}, {3, 1, 1, 1}, {2, 4}, {2, 3, 1}, {2, 2, 2}, {2, 2, 1, 1}, {2, 1, 3}, {2, 1, 2, 1}, {2, 1, 1, 2}, {2, 1, 1, 1, 1}, {1, 5}, {1, 4, 1}, {1, 3, 2}, {1, 3, 1, 1}, {1, 2, 3}, {1, 2, 2, 1}, {1, 2, 1, 2}, {1, 2, 1, 1, 1}, {1, 1, 4}, {1, 1, 3, 1}, {1, 1, 2, 2}, {1, 1, 2, 1, 1}, {1, 1, 1, 3}, {1, 1, 1, 2, 1}, {1, 1, 1, 1, 2}, {1, 1, 1, 1, 1, 1}, }, { {7}, {6, 1}, {5, 2}, {5, 1, 1}, {4, 3}, {4, 2, 1}, {4, 1, 2}, {4, 1, 1, 1}, {3, 4}, {3, 3, 1}, {3, 2, 2}, {3, 2, 1, 1}, {3, 1, 3}, {3, 1, 2, 1}, {3, 1, 1, 2}, {3, 1, 1, 1, 1}, {2, 5}, {2, 4, 1}, {2, 3, 2}, {2, 3, 1, 1}, {2, 2, 3}, {2, 2, 2, 1}, {2, 2, 1, 2}, {2, 2, 1, 1, 1}, {2, 1, 4}, {2, 1, 3, 1}, {2, 1, 2, 2}, {2, 1, 2, 1, 1}, {2, 1, 1, 3}, {2, 1, 1, 2, 1}, {2, 1, 1, 1, 2}, {2, 1, 1, 1, 1, 1}, {1, 6}, {1, 5, 1}, {1, 4, 2}, {1, 4, 1, 1}, {1, 3, 3}, {1, 3, 2, 1}, {1, 3, 1, 2}, {1, 3, 1, 1, 1}, {1, 2, 4}, {1, 2, 3, 1}, {1, 2, 2, 2}, {1, 2, 2, 1, 1}, {1, 2, 1, 3}, {1, 2, 1, 2, 1}, {1, 2, 1, 1, 2}, {1, 2, 1, 1, 1, 1}, {1, 1, 5}, {1, 1, 4, 1}, {1, 1, 3, 2}, {1, 1, 3, 1, 1}, {1, 1, 2, 3}, {1, 1, 2, 2, 1}, {1, 1, 2, 1, 2}, {1, 1, 2, 1, 1, 1}, {1, 1, 1, 4}, {1, 1, 1, 3, 1}, {1, 1, 1, 2, 2}, {1, 1, 1, 2, 1, 1}, {1, 1, 1, 1, 3}, {1, 1, 1, 1, 2, 1}, {1, 1, 1, 1, 1, 2}, {1, 1, 1, 1, 1, 1, 1}, }, { {8}, {7, 1}, {6, 2}, {6, 1, 1}, {5, 3}, {5, 2, 1}, {5, 1, 2}, {5, 1, 1, 1}, {4, 4}, {4, 3, 1}, {4, 2, 2}, {4, 2, 1, 1}, {4, 1, 3}, {4, 1, 2, 1}, {4, 1, 1, 2}, {4, 1, 1, 1, 1}, {3, 5}, {3, 4, 1}, {3, 3, 2}, {3, 3, 1, 1}, {3, 2, 3}, {3, 2, 2, 1}, {3, 2, 1, 2}, {3, 2, 1, 1, 1}, {3, 1, 4}, {3, 1, 3, 1}, {3, 1, 2, 2}, {3, 1, 2, 1, 1}, {3, 1, 1, 3}, {3, 1, 1, 2, 1}, {3, 1, 1, 1, 2}, {3, 1, 1, 1, 1, 1}, {2, 6}, {2, 5, 1}, {2, 4, 2}, {2, 4, 1, 1}, {2, 3, 3}, {2, 3, 2, 1}, {2, 3, 1, 2}, {2, 3, 1, 1, 1}, {2, 2, 4}, {2, 2, 3, 1}, {2, 2, 2, 2}, {2, 2, 2, 1, 1}, {2, 2, 1, 3}, {2, 2, 1, 2, 1}, {2, 2, 1, 1, 2}, {2, 2, 1, 1, 1, 1}, {2, 1, 5}, {2, 1, 4, 1}, {2, 1, 3, 2}, {2, 1, 3, 1, 1}, {2, 1, 2, 3}, {2, 1, 2, 2, 1}, {2, 1, 2, 1, 2}, {2, 1, 2, 1, 1, 1}, {2, 1, 1, 4}, {2, 1, 1, 3, 1}, {2, 1, 1, 2, 2}, {2, 1, 1, 2, 1, 1}, {2, 1, 1, 1, 3}, {2, 1, 1, 1, 2, 1}, {2, 1, 1, 1, 1, 2}, {2, 1, 1, 1, 1, 1, 1}, {1, 7}, {1, 6, 1}, {1, 5, 2}, {1, 5, 1, 1}, {1, 4, 3}, {1, 4, 2, 1}, {1, 4, 1, 2}, {1, 4, 1, 1, 1}, {1, 3, 4}, {1, 3, 3, 1}, {1, 3, 2, 2}, {1, 3, 2, 1, 1}, {1, 3, 1, 3}, {1, 3, 1, 2, 1}, {1, 3, 1, 1, 2}, {1, 3, 1, 1, 1, 1}, {1, 2, 5}, {1, 2, 4, 1}, {1, 2, 3, 2}, {1, 2, 3, 1, 1}, {1, 2, 2, 3}, {1, 2, 2, 2, 1}, {1, 2, 2, 1, 2}, {1, 2, 2, 1, 1, 1}, {1, 2, 1, 4}, {1, 2, 1, 3, 1}, {1, 2, 1, 2, 2}, {1, 2, 1, 2, 1, 1}, {1, 2, 1, 1, 3}, {1, 2, 1, 1, 2, 1}, {1, 2, 1, 1, 1, 2}, {1, 2, 1, 1, 1, 1, 1}, {1, 1, 6}, {1, 1, 5, 1}, {1, 1, 4, 2}, {1, 1, 4, 1, 1}, {1, 1, 3, 3}, {1, 1, 3, 2, 1}, {1, 1, 3, 1, 2}, {1, 1, 3, 1, 1, 1}, {1, 1, 2, 4}, {1, 1, 2, 3, 1}, {1, 1, 2, 2, 2}, {1, 1, 2, 2, 1, 1}, {1, 1, 2, 1, 3}, {1, 1, 2, 1, 2, 1}, {1, 1, 2, 1, 1, 2}, {1, 1, 2, 1, 1, 1, 1}, {1, 1, 1, 5}, {1, 1, 1, 4, 1}, {1, 1, 1, 3, 2}, {1, 1, 1, 3, 1, 1}, {1, 1, 1, 2, 3}, {1, 1, 1, 2, 2, 1}, {1, 1, 1, 2, 1, 2}, {1, 1, 1, 2, 1, 1, 1}, {1, 1, 1, 1, 4}, {1, 1, 1, 1, 3, 1}, {1, 1, 1, 1, 2, 2}, {1, 1, 1, 1, 2, 1, 1}, {1, 1, 1, 1, 1, 3}, {1, 1, 1, 1, 1, 2, 1}, {1, 1, 1, 1, 1, 1, 2}, {1, 1, 1, 1, 1, 1, 1, 1}, }, { {9}, {8, 1}, {7, 2}, {7, 1, 1}, {6, 3}, {6, 2, 1}, {6, 1, 2}, {6, 1, 1, 1}, {5, 4}, {5, 3, 1}, {5, 2, 2}, {5, 2, 1, 1}, {5, 1, 3}, {5, 1, 2, 1}, {5, 1, 1, 2}, {5, 1, 1, 1, 1}, {4, 5}, {4, 4, 1}, {4, 3, 2}, {4, 3, 1, 1}, {4, 2, 3}, {4, 2, 2, 1}, {4, 2, 1, 2}, {4, 2, 1, 1, 1}, {4, 1, 4}, {4, 1, 3, 1}, {4, 1, 2, 2}, {4, 1, 2, 1, 1}, {4, 1, 1, 3}, {4, 1, 1, 2, 1}, {4, 1, 1, 1, 2}, {4, 1, 1, 1, 1, 1}, {3, 6}, {3, 5, 1}, {3, 4, 2}, {3, 4, 1, 1}, {3, 3, 3}, {3, 3, 2, 1}, {3, 3, 1, 2}, {3, 3, 1, 1, 1}, {3, 2, 4}, {3, 2, 3, 1}, {3, 2, 2, 2}, {3, 2, 2, 1, 1}, {3, 2, 1, 3}, {3, 2, 1, 2, 1}, {3, 2, 1, 1, 2}, {3, 2, 1, 1, 1, 1}, {3, 1, 5}, {3, 1, 4, 1}, {3, 1, 3, 2}, {3, 1, 3, 1, 1}, {3, 1, 2, 3}, {3, 1, 2, 2, 1}, {3, 1, 2, 1, 2}, {3, 1, 2, 1, 1, 1}, {3, 1, 1, 4}, {3, 1, 1, 3, 1}, {3, 1, 1, 2, 2}, {3, 1, 1, 2, 1, 1}, {3, 1, 1, 1, 3}, {3, 1, 1, 1, 2, 1}, {3, 1, 1, 1, 1, 2}, {3, 1, 1, 1, 1, 1, 1}, {2, 7}, {2, 6, 1}, {2, 5, 2}, {2, 5, 1, 1}, {2, 4, 3}, {2, 4, 2, 1}, {2, 4, 1, 2}, {2, 4, 1, 1, 1}, {2, 3, 4}, {2, 3, 3, 1}, {2, 3, 2, 2}, {2, 3, 2, 1, 1}, {2, 3, 1, 3}, {2, 3, 1, 2, 1}, {2, 3, 1, 1, 2}, {2, 3, 1, 1, 1, 1}, {2, 2, 5}, {2, 2, 4, 1}, {2, 2, 3, 2}, {2, 2, 3, 1, 1}, {2, 2, 2, 3}, {2, 2, 2, 2, 1}, {2, 2, 2, 1, 2}, {2, 2, 2, 1, 1, 1}, {2, 2, 1, 4}, {2, 2, 1, 3, 1}, {2, 2, 1, 2, 2}, {2, 2, 1, 2, 1, 1}, {2, 2, 1, 1, 3}, {2, 2, 1, 1, 2, 1}, {2, 2, 1, 1, 1, 2}, {2, 2, 1, 1, 1, 1, 1}, {2, 1, 6}, {2, 1, 5, 1}, {2, 1, 4, 2}, {2, 1, 4, 1, 1}, {2, 1, 3, 3}, {2, 1, 3, 2, 1}, {2, 1, 3, 1, 2}, {2, 1, 3, 1, 1, 1}, {2, 1, 2, 4}, {2, 1, 2, 3, 1}, {2, 1, 2, 2, 2}, {2, 1, 2, 2, 1, 1}, {2, 1, 2, 1, 3}, {2, 1, 2, 1, 2, 1}, {2, 1, 2, 1, 1, 2}, {2, 1, 2, 1, 1, 1, 1}, {2, 1, 1, 5}, {2, 1, 1, 4, 1}, {2, 1, 1, 3, 2}, {2, 1, 1, 3, 1, 1}, {2, 1, 1, 2, 3}, {2, 1, 1, 2, 2, 1}, {2, 1, 1, 2, 1, 2}, {2, 1, 1, 2, 1, 1, 1}, {2, 1, 1, 1, 4}, {2, 1, 1, 1, 3, 1}, {2, 1, 1, 1, 2, 2}, {2, 1, 1, 1, 2, 1, 1}, {2, 1, 1, 1, 1, 3}, {2, 1, 1, 1, 1, 2, 1}, {2, 1, 1, 1, 1, 1, 2}, {2, 1, 1, 1, 1, 1, 1, 1}, {1, 8}, {1, 7, 1}, {1, 6, 2}, {1, 6, 1, 1}, {1, 5, 3}, {1, 5, 2, 1}, {1, 5, 1, 2}, {1, 5, 1, 1, 1}, {1, 4, 4}, {1, 4, 3, 1}, {1, 4, 2, 2}, {1, 4, 2, 1, 1}, {1, 4, 1, 3}, {1, 4, 1, 2, 1}, {1, 4, 1, 1, 2}, {1, 4, 1, 1, 1, 1}, {1, 3, 5}, {1, 3, 4, 1}, {1, 3, 3, 2}, {1, 3, 3, 1, 1}, {1, 3, 2, 3}, {1, 3, 2, 2, 1}, {1, 3, 2, 1, 2}, {1, 3, 2, 1, 1, 1}, {1, 3, 1, 4}, {1, 3, 1, 3, 1}, {1, 3, 1, 2, 2}, {1, 3, 1, 2, 1, 1}, {1, 3, 1, 1, 3}, {1, 3, 1, 1, 2, 1}, {1, 3, 1, 1, 1, 2}, {1, 3, 1, 1, 1, 1, 1}, {1, 2, 6}, {1, 2, 5, 1}, {1, 2, 4, 2}, {1, 2, 4, 1, 1}, {1, 2, 3, 3}, {1, 2, 3, 2, 1}, {1, 2, 3, 1, 2}, {1, 2, 3, 1, 1, 1}, {1, 2, 2, 4}, {1, 2, 2, 3, 1}, {1, 2, 2, 2, 2}, {1, 2, 2, 2, 1, 1}, {1, 2, 2, 1, 3}, {1, 2, 2, 1, 2, 1}, {1, 2, 2, 1, 1, 2}, {1, 2, 2, 1, 1, 1, 1}, {1, 2, 1, 5}, {1, 2, 1, 4, 1}, {1, 2, 1, 3, 2}, {1, 2, 1, 3, 1, 1}, {1, 2, 1, 2, 3}, {1, 2, 1, 2, 2, 1}, {1, 2, 1, 2, 1, 2}, {1, 2, 1, 2, 1, 1, 1}, {1, 2, 1, 1, 4}, {1, 2, 1, 1, 3, 1}, {1, 2, 1, 1, 2, 2}, {1, 2, 1, 1, 2, 1, 1}, {1, 2, 1, 1, 1, 3}, {1, 2, 1, 1, 1, 2, 1}, {1, 2, 1, 1, 1, 1, 2}, {1, 2, 1, 1, 1, 1, 1, 1}, {1, 1, 7}, {1, 1, 6, 1}, {1, 1, 5, 2}, {1, 1, 5, 1, 1}, {1, 1, 4, 3}, {1, 1, 4, 2, 1}, {1, 1, 4, 1, 2}, {1, 1, 4, 1, 1, 1}, {1, 1, 3, 4}, {1, 1, 3, 3, 1}, {1, 1, 3, 2, 2}, {1, 1, 3, 2, 1, 1}, {1, 1, 3, 1, 3}, {1, 1, 3, 1, 2, 1}, {1, 1, 3, 1, 1, 2}, {1, 1, 3, 1, 1, 1, 1}, {1, 1, 2, 5}, {1, 1, 2, 4, 1}, {1, 1, 2, 3, 2}, {1, 1, 2, 3, 1, 1}, {1, 1, 2, 2, 3}, {1, 1, 2, 2, 2, 1}, {1, 1, 2, 2, 1, 2}, {1, 1, 2, 2, 1, 1, 1}, {1, 1, 2, 1, 4}, {1, 1, 2, 1, 3, 1}, {1, 1, 2, 1, 2, 2}, {1, 1, 2, 1, 2, 1, 1}, {1, 1, 2, 1, 1, 3}, {1, 1, 2, 1, 1, 2, 1}, {1, 1, 2, 1, 1, 1, 2}, {1, 1, 2, 1, 1, 1, 1, 1}, {1, 1, 1, 6}, {1, 1, 1, 5, 1}, {1, 1, 1, 4, 2}, {1, 1, 1, 4, 1, 1}, {1, 1, 1, 3, 3}, {1, 1, 1, 3, 2, 1}, {1, 1, 1, 3, 1, 2}, {1, 1, 1, 3, 1, 1, 1}, {1, 1, 1, 2, 4}, {1, 1, 1, 2, 3, 1}, {1, 1, 1, 2, 2, 2}, {1, 1, 1, 2, 2, 1, 1}, {1, 1, 1, 2, 1, 3}, {1, 1, 1, 2, 1, 2, 1}, {1, 1, 1, 2, 1, 1, 2}, {1, 1, 1, 2, 1, 1, 1, 1}, {1, 1, 1, 1, 5}, {1, 1, 1, 1, 4, 1}, {1, 1, 1, 1, 3, 2}, {1, 1, 1, 1, 3, 1, 1}, {1, 1, 1, 1, 2, 3}, {1, 1, 1, 1, 2, 2, 1}, {1, 1, 1, 1, 2, 1, 2}, {1, 1, 1, 1, 2, 1, 1, 1}, {1, 1, 1, 1, 1, 4}, {1, 1, 1, 1, 1, 3, 1}, {1, 1, 1, 1, 1, 2, 2}, {1, 1, 1, 1, 1, 2, 1, 1}, {1, 1, 1, 1, 1, 1, 3}, {1, 1, 1, 1, 1, 1, 2, 1}, {1, 1, 1, 1, 1, 1, 1, 2}, {1, 1, 1, 1, 1, 1, 1, 1, 1}}};
   private double glideTime   = 10;                                              // Default average number of seconds for an image to glide across its display area
   private int shown          = 0;                                               // Number of times shown after something else has been shown
   private boolean screenShotMode = false;                                       // Normally false, true if we are doing screen shots to make the glide slower and more stable
+  public static boolean rasterizeText = true;                                   // Draw text whose theme is not animated from a bitmap of its composed output rather than drawing each line three times every frame
+  private final static AtomicLong
+    textRasterHits   = new AtomicLong(),                                        // Text drawn from its raster
+    textRasterMisses = new AtomicLong();                                        // Text drawn into its raster because the raster was missing or out of date
+  public static boolean decodeVisibleTilesOnly = false;                         // Decode the tiles of each image as the glide brings them into view rather than all at once before the image is shown
+  public static boolean progressiveImages = true;                               // Show a low resolution preview of each image until its full resolution tiles have been decoded
   private Double pressTime = null;                                              // Time latest touch started or null if the user is not touching the screen
+  private double frameTime = Time.secs();                                       // Time in seconds of the frame being drawn so that every element drawn in one frame agrees on the time
+  private final static Object redrawMonitor = new Object();                     // Notified when a redraw is requested
+  private static long redrawRequests = 0;                                       // Number of redraws requested - guarded by redrawMonitor
+  public final static int dirtyMargin = 8;                                      // Pixels beyond its drawing area that an element might paint, for instance with the outline of its text
+  private final RectF dirty = new RectF(), clip = new RectF();                  // Union of the areas that have changed, region being drawn extended by the dirty margin
+  private boolean overlaid = false;                                             // Whether the last frame drawn showed an overlay such as the compass rose that might cover any part of the canvas
+  public long elementsDrawn = 0;                                                // Number of elements drawn
   public double
     dragTimeTotal     = 0,                                                      // Time taken by drag in seconds
     dragTimeLast      = 0,                                                      // Time of last drag
@@ -123,6 +146,7 @@ public class Svg
    {if (theme == null) theme = defaultTheme; else defaultTheme = theme;
     for(Element e: elements) e.setTheme(theme);
     setCompassRoseTheme(theme);                                                 // Set the current pattern for the Svg elements that use a pattern
+    requestRedraw();
 
    }
 
@@ -149,10 +173,41 @@ public class Svg
    {this.glideTime = glideTime;
    }
 
-  public void waitForPreparesToFinish()                                         //M Wait for any threads to finish that are preparing parts of the Svg
-   {for(Thread t: prepare)
-     {try{t.join();} catch(Exception e) {}
-     }
+  public void waitForPreparesToFinish()                                         //M Wait for the bitmaps being prepared for the Svg to finish
+   {for(PhotoBytes.Draw d: prepare) d.await();
+   }
+
+  public void waitForPreviewsToFinish()                                         //M Wait for the low resolution previews of the images in the Svg to be prepared so that the Svg can be shown while the full resolution tiles are still being decoded
+   {for(PhotoBytes.Draw d: prepare) d.awaitPreview();
+   }
+
+  public void cancelPrepares()                                                  //M Drop any bitmap preparation for this Svg that has not finished because the Svg is no longer wanted
+   {for(PhotoBytes.Draw d: prepare) d.cancel();
+   }
+
+  public void release()                                                         //M Return the bitmaps of the images in this Svg to the bitmap pool - the Svg must not be drawn again
+   {for(PhotoBytes.Draw d: prepare) d.release();
+    for(Element e: elements) if (e instanceof Text) ((Text)e).dropRaster();     // Text rasters
+   }
+
+  public static double textRasterHitRate()                                      //M The fraction of text draws that were satisfied by an existing raster or zero if no text has been rasterized
+   {final double h = textRasterHits.get(), m = textRasterMisses.get();
+    return h + m > 0 ? h / (h + m) : 0;
+   }
+
+  public static String textRasterStatistics()                                   //M Text raster hits and misses as a string
+   {return "Text raster hits="+textRasterHits.get()+
+           " misses="+textRasterMisses.get()+
+           " hitRate="+String.format("%.3f", textRasterHitRate());
+   }
+
+  public static void discard                                                    //M Mark an Svg as no longer wanted so that its bitmaps are released by the next call to releaseDiscarded()
+   (final Svg svg)                                                              //P Svg or null
+   {if (svg != null) discarded.add(svg);
+   }
+
+  public static void releaseDiscarded()                                         //M Release the bitmaps of the discarded Svgs - call on the display thread before drawing so that no discarded Svg is being drawn
+   {for(Svg s = discarded.poll(); s != null; s = discarded.poll()) s.release();
    }
 
   public int shown()                                                            //M Give read access to number of times shown
@@ -192,10 +247,58 @@ public class Svg
    {userSelectedAnOctantThenCancelledOrMovedButNotEnough = runnable;
    }
 
-  public Svg draw                                                               //M Draw the Svg on the specified canvas
+  public Svg draw                                                               //M Draw the Svg on the specified canvas at the current time
    (final Canvas canvas)                                                        //P Canvas to draw on
-   {final Double pressTimeF = pressTime;
-     if (pressTimeF != null) dt = (float)(Time.secs() - pressTimeF);            // Update time in seconds since press if  touch in progress
+   {return draw(canvas, Time.secs());
+   }
+
+  public Svg draw                                                               //M Draw the Svg on the specified canvas as it appears at the specified time
+   (final Canvas canvas,                                                        //P Canvas to draw on
+    final double frameTime)                                                     //P Time in seconds of the frame being drawn
+   {return draw(canvas, frameTime, null);
+   }
+
+  public boolean dirtyRegion                                                    //M Find the region of a canvas of the specified size that must be drawn again to show this Svg at the specified time and return false if nothing has changed since the last frame
+   (final int    w,                                                             //P Width of the canvas in pixels
+    final int    h,                                                             //P Height of the canvas in pixels
+    final double frameTime,                                                     //P Time in seconds of the frame to be drawn
+    final Rect   region)                                                        //P Set to the region to be drawn again
+   {this.frameTime = frameTime;
+    if (overlaid || pressTime != null || pageMenuActive || imageMover != null ||// An overlay might have covered any part of the canvas
+        lastDrawn != this || w != lastCanvasWidth || h != lastCanvasHeight)     // A different Svg or canvas
+     {region.set(0, 0, w, h);
+      return true;
+     }
+    final RectF d = dirty;
+    d.setEmpty();
+    for(Element e: elements)                                                    // Union of the areas of the elements that have changed before and after the change
+     {if (e.visible) e.layout(w, h);
+      final boolean same = e.visible ? e.drawArea.equals(e.drawn) : e.drawn.isEmpty();
+      if (same && !e.changed && !(e.visible && e.moving())) continue;           // Unchanged
+      d.union(e.drawn);                                                         // Where it was
+      if (e.visible) d.union(e.drawArea);                                       // Where it is now
+     }
+    if (d.isEmpty()) return false;                                              // Nothing to draw
+    final int m = dirtyMargin;
+    region.set(Math.max(0, (int)Math.floor(d.left)   - m),
+               Math.max(0, (int)Math.floor(d.top)    - m),
+               Math.min(w, (int)Math.ceil (d.right)  + m),
+               Math.min(h, (int)Math.ceil (d.bottom) + m));
+    return true;
+   }
+
+  public Svg draw                                                               //M Draw the Svg on the specified canvas as it appears at the specified time drawing only the elements that might paint in the specified region
+   (final Canvas canvas,                                                        //P Canvas to draw on - clipped to the region if there is one
+    final double frameTime,                                                     //P Time in seconds of the frame being drawn
+    final Rect   region)                                                        //P Region of the canvas being drawn after a call to dirtyRegion() or null to draw every element
+   {this.frameTime = frameTime;                                                 // Elements read the time of the frame rather than the clock
+    final RectF c = region != null ? clip : null;                               // Elements that might paint in the region
+    if (c != null)
+     {final int m = dirtyMargin;
+      c.set(region.left - m, region.top - m, region.right + m, region.bottom + m);
+     }
+    final Double pressTimeF = pressTime;
+     if (pressTimeF != null) dt = (float)(frameTime - pressTimeF);              // Update time in seconds since press if  touch in progress
     lastCanvasWidth  = canvas.getWidth();                                       // Save canvas dimensions for use in motion processing
     lastCanvasHeight = canvas.getHeight();
     canvas.drawColor(backGroundColour);                                         // Fill the canvas with the back ground colour
@@ -209,18 +312,18 @@ public class Svg
     if (imageMover == null)                                                     // Allow animations if no image mover is present
      {for(Element e: elements)                                                  // Draw elements that are both animated and active on top of other elements
        {if (e.centerToCenter == null || e.centerToCenter.active() == 0)         // No animation or animation not active
-         {if (e.visible) e.drawElement(canvas);                                 // Draw visible elements
+         {drawElement(e, canvas, c);                                            // Draw visible elements
          }
        }
       for(Element e: elements)                                                  // Animated and active
        {if (e.centerToCenter != null && e.centerToCenter.active() != 0)
-         {if (e.visible) e.drawElement(canvas);                                 // Draw visible elements
+         {drawElement(e, canvas, c);                                            // Draw visible elements
          }
        }
      }
     else                                                                        // No animations if image mover is present
      {for(Element e: elements)                                                  // Animated and active
-       {if (e.visible) e.drawElement(canvas);                                   // Draw visible elements
+       {drawElement(e, canvas, c);                                              // Draw visible elements
        }
      }
 
@@ -230,7 +333,7 @@ public class Svg
          {compassRose.drawElement(canvas);                                      // Draw the rose representation of the compassRose
          }
         else if (menuMode == MenuMode.Page)                                     // Show the compass rose via a page menu
-         {if (Time.secs() - pressTime > tapNotTouchTime)                        // Pressed long enough not to be a tap
+         {if (frameTime - pressTime > tapNotTouchTime)                          // Pressed long enough not to be a tap
            {if (!pageMenuActive)                                                // The page menu is not currently being displayed
              {if (svgPageMenu == null)                                          // Create the page menu if necessary
                {svgPageMenu = compassRose.createPageMenu();
@@ -245,7 +348,7 @@ public class Svg
     if (pageMenuActive)                                                         // Draw the page menu
      {final Svg s = svgPageMenu;
       if (s != null)
-       {s.draw(canvas);
+       {s.draw(canvas, frameTime);
         for(Element e: s.elements)                                              // Highlight the active square
          {if (e instanceof Text)
            {final Text t = (Text)e;
@@ -255,9 +358,52 @@ public class Svg
        }
      }
 
+    overlaid = pressTime != null || pageMenuActive || imageMover != null;       // The next frame must be drawn in full to remove an overlay
+    lastDrawn = this;
     return this;
    }
 
+  private void drawElement                                                      //M Draw an element if it is visible and might paint in the region being drawn
+   (final Element e,                                                            //P Element
+    final Canvas  canvas,                                                       //P Canvas
+    final RectF   clip)                                                         //P Region being drawn extended by the dirty margin or null for the whole canvas
+   {if (!e.visible) {e.drawn.setEmpty(); return;}                               // Not drawn
+    if (clip != null && !RectF.intersects(clip, e.drawArea)) return;            // Unchanged and outside the region so what it drew last time is still there
+    e.drawElement(canvas);
+   }
+
+  public boolean animating()                                                    //M Whether drawing this Svg again would show something different without any further input
+   {if (pressTime != null || imageMover != null || pageMenuActive) return true; // A touch in progress, a moving image or the page menu
+    for(Element e: elements) if (e.visible && e.moving()) return true;          // A visible element is moving
+    return false;
+   }
+
+  public static void requestRedraw()                                            //M Ask the display to draw again because something has changed that is not animated
+   {synchronized(redrawMonitor)
+     {++redrawRequests;
+      redrawMonitor.notifyAll();
+     }
+   }
+
+  public static long redrawRequests()                                           //M Number of redraws requested so far
+   {synchronized(redrawMonitor)
+     {return redrawRequests;
+     }
+   }
+
+  public static boolean awaitRedrawRequest                                      //M Wait until a redraw has been requested since the specified count or until the specified time has elapsed and return whether a redraw was requested
+   (final long seen,                                                            //P Count of requests returned by redrawRequests() before the last draw
+    final long millis)                                                          //P Maximum time to wait in milliseconds
+   {synchronized(redrawMonitor)
+     {final long end = System.currentTimeMillis() + millis;
+      for(long w = millis; redrawRequests == seen && w > 0;
+               w = end - System.currentTimeMillis())
+       {try {redrawMonitor.wait(w);} catch(InterruptedException e) {break;}
+       }
+      return redrawRequests != seen;
+     }
+   }
+
   private void runTapAction                                                     //M Run the tap action for this svg at the specified point
    (final float x,                                                              //P X coordinate of tap
     final float y)                                                              //P Y coordinate of tap
@@ -288,6 +434,8 @@ public class Svg
     private boolean visible = true;                                             // Visibility of element
     private String name = null;                                                 // The name of the element
     private Runnable actionTap = null;                                          // Action if user taps on this element
+    protected final RectF drawn = new RectF();                                  // Drawing area in pixels when this element was last drawn, empty if it was not drawn
+    protected boolean changed = true;                                           // Set when the appearance of this element changes other than by moving so that it will be drawn again
 
     private Element                                                             //c Create en element by specifying its fractional area on the canvas
      (final float x,                                                            //P Fractional area in which to display the element - horizontal - left
@@ -304,19 +452,25 @@ public class Svg
 
     protected void drawElement                                                  //M Draw the SVG on a canvas
      (final Canvas canvas)                                                      //P Canvas to draw on
-     {final Svg s = Svg.this;
-      final float w = canvas.getWidth(), h = canvas.getHeight();                // Canvas dimensions
-      target.set(w > h ? targetH : targetV);                                    // Horizontal or vertical layout
+     {layout(canvas.getWidth(), canvas.getHeight());
+      drawElementOnCanvas(canvas);                                              // Draw the element in the  drawing area
+      drawn.set(drawArea);                                                      // Drawn
+      changed = false;
+      ++elementsDrawn;
+     }
+
+    protected void layout                                                       //M Set the drawing area of this element on a canvas of the specified size
+     (final float w,                                                            //P Canvas width
+      final float h)                                                            //P Canvas height
+     {target.set(w > h ? targetH : targetV);                                    // Horizontal or vertical layout
 
       if (centerToCenter != null && imageMover == null)                         // Apply animation if present and we are not manually moving an image
-       {centerToCenter.scaleDrawArea(canvas);
+       {centerToCenter.scaleDrawArea(w, h);
        }
       else                                                                      // Otherwise set normal draw area
        {drawArea.set(target.left  * w, target.top    * h,                       // Fix drawing area
                      target.right * w, target.bottom * h);
        }
-
-      drawElementOnCanvas(canvas);                                              // Draw the element in the  drawing area
      }
 
     public RectF drawArea()                                                     //M Actual area on display where the element to is be drawn in pixels
@@ -355,6 +509,8 @@ public class Svg
     public void setVisible                                                      //M Set visibility for this element
      (final boolean visible)                                                    //P true - make this element visible, false - make it invisible
      {this.visible = visible;
+      changed = true;
+      requestRedraw();
      }
 
     private CenterToCenter setCenterToCenter                                    //M Create and set Center To Center animation for this element
@@ -378,6 +534,15 @@ public class Svg
      {centerToCenter = null;
      }
 
+    protected boolean moving()                                                  //M Whether this element would be drawn differently if it were drawn again now
+     {return centerToCenter != null;                                            // Center to center animations repeat
+     }
+
+    protected boolean animated()                                                //M Whether the draw area was set by an active animation when this element was last drawn
+     {final CenterToCenter c = centerToCenter;
+      return c != null && c.wasActive && imageMover == null;
+     }
+
     public String type()                                                        //M Type of this element
      {return "Svg.Element";
      }
@@ -422,7 +587,7 @@ public class Svg
 
       protected float active()                                                  //M Get fraction of animation
        {final double
-         t = Time.secs(),                                                       // Time
+         t = frameTime,                                                         // Time of the frame being drawn
          a = delay,                                                             // Initial delay
          d = duration,                                                          // Duration
          p = a + d + startAgain,                                                // Period
@@ -446,9 +611,9 @@ public class Svg
        }
 
       protected void scaleDrawArea                                              //M Apply scale to the drawing area
-       (Canvas canvas)                                                          //P Canvas to which scaling is to be applied
+       (final float w,                                                          //P Width of the canvas to which scaling is to be applied
+        final float h)                                                          //P Height of the canvas to which scaling is to be applied
        {final float s = active();
-        final float w = canvas.getWidth(), h = canvas.getHeight();
 
         drawArea.set                                                            // Actual drawing area
          (((expanse.left   - target.left  ) * s + target.left  ) * w,
@@ -483,15 +648,20 @@ public class Svg
     public void setTheme                                                        //M Set the theme for this element
      (final Themes.Theme theme)                                                 //P The theme to use
      {this.theme = theme.make();
+      changed = true;
      }
 
     public String getThemeName()                                                //M Get the theme name used to draw this element
      {return theme.name();
      }
 
+    protected boolean moving()                                                  //O=com.appaapps.Svg.Element.moving Moving if animated or if the theme is animated
+     {return super.moving() || theme.animated();
+     }
+
     protected void drawElement                                                  //M Draw the Svg on the canvas
      (final Canvas canvas)                                                      //P Canvas to draw on
-     {theme.set(canvas, width(canvas), height(canvas));                         // Set the themes
+     {theme.set(canvas, width(canvas), height(canvas), frameTime);              // Set the themes as they are at the time of this frame
       super.drawElement(canvas);
      }
 
@@ -551,43 +721,134 @@ public class Svg
     return r;
    }
 
-  public class Text                                                             //C Draw some text
-    extends Element2                                                            //E So we can draw the text with a theme
-   {final protected String text;                                                // The text to display
-    final private int justifyX, justifyY, justify𝗫, justify𝗬;                   // Justification in x and y for each orientation
-    final private RectF
-      textArea  = new RectF(),                                                  // Preallocated rectangle for text bounds
-      textDraw  = new RectF(),                                                  // Preallocated rectangle for enclosing the current line of text
-      textUnion = new RectF();                                                  // Preallocated rectangle for smallest rectangle enclosing all the text
-    final private Path textPath = new Path();                                   // Preallocated path for text
-    final private Paint
-      paint  = new Paint(),                                                     // Paint to calculate the text path
-      back   = new Paint(),                                                     // Paint outline background of text - this is drawn as a thin black line around each character to increase the contrast of each character
-      block  = new Paint();                                                     // Paint for a rectangle behind the text to increase the contrast of the text
+  public static class TextLayouts                                               //C The candidate layouts of a string computed once and shared by every text element in every Svg that displays the same string in the same font at the same size
+   {private final static ConcurrentHashMap<Key, TextLayouts> cache =            // Layouts already computed by text, size and font
+      new ConcurrentHashMap<Key, TextLayouts>();
+    private final static int maximumCachedTextLayouts = 4096;                   // Clear the cache rather than let it grow without limit as apps are changed
+    final public String text;                                                   // The text laid out
+    final public RectF bounds = new RectF();                                    // Bounds of the path of the text drawn on one line
     final private float
       widthOfString;                                                            // The length of the string when drawn on one line
     final private int
       numberOfChars;                                                            // Length of text string
+    final private float[]
+      advance;                                                                  // advance[i] is the width of the first i characters so that the width of any section of the text is the difference of two entries
     final private Stack<Layout>
        layouts = new Stack<Layout>();                                           // The possible layouts
-    final int[][][]breakingLayoutTable = { {{1}}, {{2}, {1, 1}}, {{3}, {2, 1}, {1, 2}, {1, 1, 1}}, { {4}, {3, 1}, {2, 2}, {2, 1, 1}, {1, 3}, {1, 2, 1}, {1, 1, 2}, {1, 1, 1, 1}, }, { {5}, {4, 1}, {3, 2}, {3, 1, 1}, {2, 3}, {2, 2, 1}, {2, 1, 2}, {2, 1, 1, 1}, {1, 4}, {1, 3, 1}, {1, 2, 2}, {1, 2, 1, 1}, {1, 1, 3}, {1, 1, 2, 1}, {1, 1, 1, 2}, {1, 1, 1, 1, 1}, }, { {6}, {5, 1}, {4, 2}, {4, 1, 1}, {3, 3}, {3, 2, 1}, {3, 1, 2}, {3, 1, 1, 1}, {2, 4}, {2, 3, 1}, {2, 2, 2}, {2, 2, 1, 1}, {2, 1, 3}, {2, 1, 2, 1}, {2, 1, 1, 2}, {2, 1, 1, 1, 1}, {1, 5}, {1, 4, 1}, {1, 3, 2}, {1, 3, 1, 1}, {1, 2, 3}, {1, 2, 2, 1}, {1, 2, 1, 2}, {1, 2, 1, 1, 1}, {1, 1, 4}, {1, 1, 3, 1}, {1, 1, 2, 2}, {1, 1, 2, 1, 1}, {1, 1, 1, 3}, {1, 1, 1, 2, 1}, {1, 1, 1, 1, 2}, {1, 1, 1, 1, 1, 1}, }, { {7}, {6, 1}, {5, 2}, {5, 1, 1}, {4, 3}, {4, 2, 1}, {4, 1, 2}, {4, 1, 1, 1}, {3, 4}, {3, 3, 1}, {3, 2, 2}, {3, 2, 1, 1}, {3, 1, 3}, {3, 1, 2, 1}, {3, 1, 1, 2}, {3, 1, 1, 1, 1}, {2, 5}, {2, 4, 1}, {2, 3, 2}, {2, 3, 1, 1}, {2, 2, 3}, {2, 2, 2, 1}, {2, 2, 1, 2}, {2, 2, 1, 1, 1}, {2, 1, 4}, {2, 1, 3, 1}, {2, 1, 2, 2}, {2, 1, 2, 1, 1}, {2, 1, 1, 3}, {2, 1, 1, 2, 1}, {2, 1, 1, 1, 2}, {2, 1, 1, 1, 1, 1}, {1, 6}, {1, 5, 1}, {1, 4, 2}, {1, 4, 1, 1}, {1, 3, 3}, {1, 3, 2, 1}, {1, 3, 1, 2}, {1, 3, 1, 1, 1}, {1, 2, 4}, {1, 2, 3, 1}, {1, 2, 2, 2}, {1, 2, 2, 1, 1}, {1, 2, 1, 3}, {1, 2, 1, 2, 1}, {1, 2, 1, 1, 2}, {1, 2, 1, 1, 1, 1}, {1, 1, 5}, {1, 1, 4, 1}, {1, 1, 3, 2}, {1, 1, 3, 1, 1}, {1, 1, 2, 3}, {1, 1, 2, 2, 1}, {1, 1, 2, 1, 2}, {1, 1, 2, 1, 1, 1}, {1, 1, 1, 4}, {1, 1, 1, 3, 1}, {1, 1, 1, 2, 2}, {1, 1, 1, 2, 1, 1}, {1, 1, 1, 1, 3}, {1, 1, 1, 1, 2, 1}, {1, 1, 1, 1, 1, 2}, {1, 1, 1, 1, 1, 1, 1}, }, { {8}, {7, 1}, {6, 2}, {6, 1, 1}, {5, 3}, {5, 2, 1}, {5, 1, 2}, {5, 1, 1, 1}, {4, 4}, {4, 3, 1}, {4, 2, 2}, {4, 2, 1, 1}, {4, 1, 3}, {4, 1, 2, 1}, {4, 1, 1, 2}, {4, 1, 1, 1, 1}, {3, 5}, {3, 4, 1}, {3, 3, 2}, {3, 3, 1, 1}, {3, 2, 3}, {3, 2, 2, 1}, {3, 2, 1, 2}, {3, 2, 1, 1, 1}, {3, 1, 4}, {3, 1, 3, 1}, {3, 1, 2, 2}, {3, 1, 2, 1, 1}, {3, 1, 1, 3}, {3, 1, 1, 2, 1}, {3, 1, 1, 1, 2}, {3, 1, 1, 1, 1, 1}, {2, 6}, {2, 5, 1}, {2, 4, 2}, {2, 4, 1, 1}, {2, 3, 3}, {2, 3, 2, 1}, {2, 3, 1, 2}, {2, 3, 1, 1, 1}, {2, 2, 4}, {2, 2, 3, 1}, {2, 2, 2, 2}, {2, 2, 2, 1, 1}, {2, 2, 1, 3}, {2, 2, 1, 2, 1}, {2, 2, 1, 1, 2}, {2, 2, 1, 1, 1, 1}, {2, 1, 5}, {2, 1, 4, 1}, {2, 1, 3, 2}, {2, 1, 3, 1, 1}, {2, 1, 2, 3}, {2, 1, 2, 2, 1}, {2, 1, 2, 1, 2}, {2, 1, 2, 1, 1, 1}, {2, 1, 1, 4}, {2, 1, 1, 3, 1}, {2, 1, 1, 2, 2}, {2, 1, 1, 2, 1, 1}, {2, 1, 1, 1, 3}, {2, 1, 1, 1, 2, 1}, {2, 1, 1, 1, 1, 2}, {2, 1, 1, 1, 1, 1, 1}, {1, 7}, {1, 6, 1}, {1, 5, 2}, {1, 5, 1, 1}, {1, 4, 3}, {1, 4, 2, 1}, {1, 4, 1, 2}, {1, 4, 1, 1, 1}, {1, 3, 4}, {1, 3, 3, 1}, {1, 3, 2, 2}, {1, 3, 2, 1, 1}, {1, 3, 1, 3}, {1, 3, 1, 2, 1}, {1, 3, 1, 1, 2}, {1, 3, 1, 1, 1, 1}, {1, 2, 5}, {1, 2, 4, 1}, {1, 2, 3, 2}, {1, 2, 3, 1, 1}, {1, 2, 2, 3}, {1, 2, 2, 2, 1}, {1, 2, 2, 1, 2}, {1, 2, 2, 1, 1, 1}, {1, 2, 1, 4}, {1, 2, 1, 3, 1}, {1, 2, 1, 2, 2}, {1, 2, 1, 2, 1, 1}, {1, 2, 1, 1, 3}, {1, 2, 1, 1, 2, 1}, {1, 2, 1, 1, 1, 2}, {1, 2, 1, 1, 1, 1, 1}, {1, 1, 6}, {1, 1, 5, 1}, {1, 1, 4, 2}, {1, 1, 4, 1, 1}, {1, 1, 3, 3}, {1, 1, 3, 2, 1}, {1, 1, 3, 1, 2}, {1, 1, 3, 1, 1, 1}, {1, 1, 2, 4}, {1, 1, 2, 3, 1}, {1, 1, 2, 2, 2}, {1, 1, 2, 2, 1, 1}, {1, 1, 2, 1, 3}, {1, 1, 2, 1, 2, 1}, {1, 1, 2, 1, 1, 2}, {1, 1, 2, 1, 1, 1, 1}, {1, 1, 1, 5}, {1, 1, 1, 4, 1}, {1, 1, 1, 3, 2}, {1, 1, 1, 3, 1, 1}, {1, 1, 1, 2, 3}, {1, 1, 1, 2, 2, 1}, {1, 1, 1, 2, 1, 2}, {1, 1, 1, 2, 1, 1, 1}, {1, 1, 1, 1, 4}, {1, 1, 1, 1, 3, 1}, {1, 1, 1, 1, 2, 2}, {1, 1, 1, 1, 2, 1, 1}, {1, 1, 1, 1, 1, 3}, {1, 1, 1, 1, 1, 2, 1}, {1, 1, 1, 1, 1, 1, 2}, {1, 1, 1, 1, 1, 1, 1, 1}, }, { {9}, {8, 1}, {7, 2}, {7, 1, 1}, {6, 3}, {6, 2, 1}, {6, 1, 2}, {6, 1, 1, 1}, {5, 4}, {5, 3, 1}, {5, 2, 2}, {5, 2, 1, 1}, {5, 1, 3}, {5, 1, 2, 1}, {5, 1, 1, 2}, {5, 1, 1, 1, 1}, {4, 5}, {4, 4, 1}, {4, 3, 2}, {4, 3, 1, 1}, {4, 2, 3}, {4, 2, 2, 1}, {4, 2, 1, 2}, {4, 2, 1, 1, 1}, {4, 1, 4}, {4, 1, 3, 1}, {4, 1, 2, 2}, {4, 1, 2, 1, 1}, {4, 1, 1, 3}, {4, 1, 1, 2, 1}, {4, 1, 1, 1, 2}, {4, 1, 1, 1, 1, 1}, {3, 6}, {3, 5, 1}, {3, 4, 2}, {3, 4, 1, 1}, {3, 3, 3}, {3, 3, 2, 1}, {3, 3, 1, 2}, {3, 3, 1, 1, 1}, {3, 2, 4}, {3, 2, 3, 1}, {3, 2, 2, 2}, {3, 2, 2, 1, 1}, {3, 2, 1, 3}, {3, 2, 1, 2, 1}, {3, 2, 1, 1, 2}, {3, 2, 1, 1, 1, 1}, {3, 1, 5}, {3, 1, 4, 1}, {3, 1, 3, 2}, {3, 1, 3, 1, 1}, {3, 1, 2, 3}, {3, 1, 2, 2, 1}, {3, 1, 2, 1, 2}, {3, 1, 2, 1, 1, 1}, {3, 1, 1, 4}, {3, 1, 1, 3, 1}, {3, 1, 1, 2, 2}, {3, 1, 1, 2, 1, 1}, {3, 1, 1, 1, 3}, {3, 1, 1, 1, 2, 1}, {3, 1, 1, 1, 1, 2}, {3, 1, 1, 1, 1, 1, 1}, {2, 7}, {2, 6, 1}, {2, 5, 2}, {2, 5, 1, 1}, {2, 4, 3}, {2, 4, 2, 1}, {2, 4, 1, 2}, {2, 4, 1, 1, 1}, {2, 3, 4}, {2, 3, 3, 1}, {2, 3, 2, 2}, {2, 3, 2, 1, 1}, {2, 3, 1, 3}, {2, 3, 1, 2, 1}, {2, 3, 1, 1, 2}, {2, 3, 1, 1, 1, 1}, {2, 2, 5}, {2, 2, 4, 1}, {2, 2, 3, 2}, {2, 2, 3, 1, 1}, {2, 2, 2, 3}, {2, 2, 2, 2, 1}, {2, 2, 2, 1, 2}, {2, 2, 2, 1, 1, 1}, {2, 2, 1, 4}, {2, 2, 1, 3, 1}, {2, 2, 1, 2, 2}, {2, 2, 1, 2, 1, 1}, {2, 2, 1, 1, 3}, {2, 2, 1, 1, 2, 1}, {2, 2, 1, 1, 1, 2}, {2, 2, 1, 1, 1, 1, 1}, {2, 1, 6}, {2, 1, 5, 1}, {2, 1, 4, 2}, {2, 1, 4, 1, 1}, {2, 1, 3, 3}, {2, 1, 3, 2, 1}, {2, 1, 3, 1, 2}, {2, 1, 3, 1, 1, 1}, {2, 1, 2, 4}, {2, 1, 2, 3, 1}, {2, 1, 2, 2, 2}, {2, 1, 2, 2, 1, 1}, {2, 1, 2, 1, 3}, {2, 1, 2, 1, 2, 1}, {2, 1, 2, 1, 1, 2}, {2, 1, 2, 1, 1, 1, 1}, {2, 1, 1, 5}, {2, 1, 1, 4, 1}, {2, 1, 1, 3, 2}, {2, 1, 1, 3, 1, 1}, {2, 1, 1, 2, 3}, {2, 1, 1, 2, 2, 1}, {2, 1, 1, 2, 1, 2}, {2, 1, 1, 2, 1, 1, 1}, {2, 1, 1, 1, 4}, {2, 1, 1, 1, 3, 1}, {2, 1, 1, 1, 2, 2}, {2, 1, 1, 1, 2, 1, 1}, {2, 1, 1, 1, 1, 3}, {2, 1, 1, 1, 1, 2, 1}, {2, 1, 1, 1, 1, 1, 2}, {2, 1, 1, 1, 1, 1, 1, 1}, {1, 8}, {1, 7, 1}, {1, 6, 2}, {1, 6, 1, 1}, {1, 5, 3}, {1, 5, 2, 1}, {1, 5, 1, 2}, {1, 5, 1, 1, 1}, {1, 4, 4}, {1, 4, 3, 1}, {1, 4, 2, 2}, {1, 4, 2, 1, 1}, {1, 4, 1, 3}, {1, 4, 1, 2, 1}, {1, 4, 1, 1, 2}, {1, 4, 1, 1, 1, 1}, {1, 3, 5}, {1, 3, 4, 1}, {1, 3, 3, 2}, {1, 3, 3, 1, 1}, {1, 3, 2, 3}, {1, 3, 2, 2, 1}, {1, 3, 2, 1, 2}, {1, 3, 2, 1, 1, 1}, {1, 3, 1, 4}, {1, 3, 1, 3, 1}, {1, 3, 1, 2, 2}, {1, 3, 1, 2, 1, 1}, {1, 3, 1, 1, 3}, {1, 3, 1, 1, 2, 1}, {1, 3, 1, 1, 1, 2}, {1, 3, 1, 1, 1, 1, 1}, {1, 2, 6}, {1, 2, 5, 1}, {1, 2, 4, 2}, {1, 2, 4, 1, 1}, {1, 2, 3, 3}, {1, 2, 3, 2, 1}, {1, 2, 3, 1, 2}, {1, 2, 3, 1, 1, 1}, {1, 2, 2, 4}, {1, 2, 2, 3, 1}, {1, 2, 2, 2, 2}, {1, 2, 2, 2, 1, 1}, {1, 2, 2, 1, 3}, {1, 2, 2, 1, 2, 1}, {1, 2, 2, 1, 1, 2}, {1, 2, 2, 1, 1, 1, 1}, {1, 2, 1, 5}, {1, 2, 1, 4, 1}, {1, 2, 1, 3, 2}, {1, 2, 1, 3, 1, 1}, {1, 2, 1, 2, 3}, {1, 2, 1, 2, 2, 1}, {1, 2, 1, 2, 1, 2}, {1, 2, 1, 2, 1, 1, 1}, {1, 2, 1, 1, 4}, {1, 2, 1, 1, 3, 1}, {1, 2, 1, 1, 2, 2}, {1, 2, 1, 1, 2, 1, 1}, {1, 2, 1, 1, 1, 3}, {1, 2, 1, 1, 1, 2, 1}, {1, 2, 1, 1, 1, 1, 2}, {1, 2, 1, 1, 1, 1, 1, 1}, {1, 1, 7}, {1, 1, 6, 1}, {1, 1, 5, 2}, {1, 1, 5, 1, 1}, {1, 1, 4, 3}, {1, 1, 4, 2, 1}, {1, 1, 4, 1, 2}, {1, 1, 4, 1, 1, 1}, {1, 1, 3, 4}, {1, 1, 3, 3, 1}, {1, 1, 3, 2, 2}, {1, 1, 3, 2, 1, 1}, {1, 1, 3, 1, 3}, {1, 1, 3, 1, 2, 1}, {1, 1, 3, 1, 1, 2}, {1, 1, 3, 1, 1, 1, 1}, {1, 1, 2, 5}, {1, 1, 2, 4, 1}, {1, 1, 2, 3, 2}, {1, 1, 2, 3, 1, 1}, {1, 1, 2, 2, 3}, {1, 1, 2, 2, 2, 1}, {1, 1, 2, 2, 1, 2}, {1, 1, 2, 2, 1, 1, 1}, {1, 1, 2, 1, 4}, {1, 1, 2, 1, 3, 1}, {1, 1, 2, 1, 2, 2}, {1, 1, 2, 1, 2, 1, 1}, {1, 1, 2, 1, 1, 3}, {1, 1, 2, 1, 1, 2, 1}, {1, 1, 2, 1, 1, 1, 2}, {1, 1, 2, 1, 1, 1, 1, 1}, {1, 1, 1, 6}, {1, 1, 1, 5, 1}, {1, 1, 1, 4, 2}, {1, 1, 1, 4, 1, 1}, {1, 1, 1, 3, 3}, {1, 1, 1, 3, 2, 1}, {1, 1, 1, 3, 1, 2}, {1, 1, 1, 3, 1, 1, 1}, {1, 1, 1, 2, 4}, {1, 1, 1, 2, 3, 1}, {1, 1, 1, 2, 2, 2}, {1, 1, 1, 2, 2, 1, 1}, {1, 1, 1, 2, 1, 3}, {1, 1, 1, 2, 1, 2, 1}, {1, 1, 1, 2, 1, 1, 2}, {1, 1, 1, 2, 1, 1, 1, 1}, {1, 1, 1, 1, 5}, {1, 1, 1, 1, 4, 1}, {1, 1, 1, 1, 3, 2}, {1, 1, 1, 1, 3, 1, 1}, {1, 1, 1, 1, 2, 3}, {1, 1, 1, 1, 2, 2, 1}, {1, 1, 1, 1, 2, 1, 2}, {1, 1, 1, 1, 2, 1, 1, 1}, {1, 1, 1, 1, 1, 4}, {1, 1, 1, 1, 1, 3, 1}, {1, 1, 1, 1, 1, 2, 2}, {1, 1, 1, 1, 1, 2, 1, 1}, {1, 1, 1, 1, 1, 1, 3}, {1, 1, 1, 1, 1, 1, 2, 1}, {1, 1, 1, 1, 1, 1, 1, 2}, {1, 1, 1, 1, 1, 1, 1, 1, 1}}};
     final private int
        maxNumberOfDisplayLines  = breakingLayoutTable.length;                   // The maximum number of lines to use in a text display
 
-    private class Layout                                                        // Possible text layout
-     {private class Section                                                     // Section of text in a layout
+    private final static int aspectSteps = 16;                                  // Steps per doubling of the aspect ratio when choosing the best layout for an animated area
+    private final static int aspectRange = 8 * aspectSteps;                     // Aspect ratios up to 256 to 1 either way
+    private final static double log2 = Math.log(2);                             // Natural logarithm of 2
+    private Layout[] bestByAspect;                                              // The best layout for each quantized aspect ratio - only drawn on the display thread and a race would just choose the same layout twice
+
+    private static class Key                                                    //C Key of a string in the cache
+     {final String   text;                                                      // Text
+      final float    size;                                                      // Text size
+      final Typeface font;                                                      // Font or null for the default font
+      Key                                                                       //c Create a key
+       (final String text,                                                      //P Text
+        final Paint  paint)                                                     //P Paint supplying the size and font
+       {this.text = text;
+        this.size = paint.getTextSize();
+        this.font = paint.getTypeface();
+       }
+      public boolean equals                                                     //O=java.lang.Object.equals - same text, size and font
+       (final Object o)                                                         //P Other key
+       {if (!(o instanceof Key)) return false;
+        final Key k = (Key)o;
+        return text.equals(k.text) && size == k.size &&
+          (font == null ? k.font == null : font.equals(k.font));
+       }
+      public int hashCode()                                                     //O=java.lang.Object.hashCode - hash of the text and size
+       {return text.hashCode() * 31 + Float.floatToIntBits(size);
+       }
+     } //C Key
+
+    public static TextLayouts get                                               //M Get the layouts of a string from the cache, computing them if they are not already present
+     (final String text,                                                        //P Trimmed text
+      final Paint  paint)                                                       //P Paint supplying the size and font - only read
+     {final Key k = new Key(text, paint);
+      final TextLayouts l = cache.get(k);
+      if (l != null) return l;                                                  // Already laid out
+      final Paint p = new Paint();                                              // Paints are not thread safe so measure with our own
+      p.setTextSize(k.size);
+      p.setTypeface(k.font);
+      final TextLayouts n = new TextLayouts(text, p);
+      if (cache.size() >= maximumCachedTextLayouts) cache.clear();              // Start again rather than grow without limit
+      final TextLayouts o = cache.putIfAbsent(k, n);                            // Another thread might have laid out the same text meanwhile
+      return o != null ? o : n;
+     }
+
+    public static Thread warm                                                   //M Lay out strings on a background thread so that creating text elements to show them later is just a cache lookup
+     (final Iterable<String> texts)                                             //P Strings to lay out, nulls are ignored
+     {final Thread t = new Thread()
+       {public void run()
+         {final Paint p = new Paint();                                          // Same size and font as Text uses
+          p.setTextSize(textSize);
+          for(String s : texts)
+           {if (s != null) get(s.trim(), p);
+           }
+         }
+       };
+      t.setPriority(Thread.MIN_PRIORITY);                                       // Below the display and the decoders
+      t.start();
+      return t;
+     }
+
+    public static int size()                                                    //M Number of strings in the cache
+     {return cache.size();
+     }
+
+    public Layout best                                                          //M The layout that gives the greatest perceived scale in an area of the specified dimensions - there is always at least one = a single line
+     (final float aw,                                                           //P Width of the area in which the text is drawn
+      final float ah)                                                           //P Height of the area in which the text is drawn
+     {Layout L = null; float S = 0;                                             // Best layout and its perceived scale
+      for(Layout l : layouts)                                                   // Each layout
+       {final float s = l.perceivedScale(aw, ah);
+        if (L == null || s > S)                                                 // Acceptable scale with allowance for better breakage
+         {L = l; S = s;
+         }
+       }
+      return L;
+     }
+
+    public Layout bestQuantized                                                 //M The best layout for an area of about this aspect ratio - the choice only depends on the aspect ratio of the area as scaling the area scales every layout equally, so quantizing the aspect ratio lets an animated area reuse the choices made in earlier frames
+     (final float aw,                                                           //P Width of the area in which the text is drawn
+      final float ah)                                                           //P Height of the area in which the text is drawn
+     {if (!(aw > 0 && ah > 0)) return best(aw, ah);                             // Degenerate area
+      final int q = Math.round((float)(Math.log(aw / ah) / log2) * aspectSteps);// Quantized base 2 logarithm of the aspect ratio
+      final int i = Math.max(-aspectRange, Math.min(aspectRange, q)) + aspectRange;
+      Layout[]b = bestByAspect;
+      if (b == null) b = bestByAspect = new Layout[2 * aspectRange + 1];        // Allocated once the text is animated
+      Layout l = b[i];
+      if (l == null)                                                            // Choose the best layout for the aspect ratio at the center of this step
+       {final float a = (float)Math.pow(2, (i - aspectRange) / (double)aspectSteps);
+        l = b[i] = best(a * textSize, textSize);
+       }
+      return l;
+     }
+
+    public class Layout                                                         // Possible text layout
+     {public class Section                                                      // Section of text in a layout
        {private float width;                                                    // Width of text
-        private String text;                                                    // Text
+        private int start, end;                                                 // Start and end of the trimmed text in the string
         private boolean breaks;                                                 // Whether text ended in a space
         Section                                                                 //C Layout text as multiple lines
-         (final String Text)                                                    //P Text sections
-         {breaks = Text.length() > 0 && Text.charAt(Text.length()-1) == ' ';    // Originally ended in space
-          text   = Text.trim();                                                 // Text
-          width  = paint.measureText(text);                                     // Width of text
+         (int Start,                                                            //P Start of the section in the string
+          int End)                                                              //P End of the section in the string
+         {breaks = End > Start && text.charAt(End-1) == ' ';                    // Originally ended in space
+          while(Start < End && text.charAt(Start)   <= ' ') ++Start;            // Trim leading white space as String.trim() would
+          while(Start < End && text.charAt(End - 1) <= ' ') --End;              // Trim trailing white space
+          start  = Start;                                                       // Start of text
+          end    = End;                                                         // End of text
+          width  = advance[End] - advance[Start];                               // Width of text from the cumulative advance widths
          }
 
         public String toString()                                                //M Describe as a string
-         {return "Section(width="+width+", breaks="+breaks+", text="+text+")";
+         {return "Section(width="+width+", breaks="+breaks+", text="+
+                   text.substring(start, end)+")";
          }
        };
 
@@ -596,11 +857,13 @@ public class Svg
       final private int breaks;                                                 // Number of breaks in layout
 
       Layout                                                                    //C Layout text as multiple lines
-       (Stack<String> Sections)                                                 //P Text sections
+       (final int[]cuts,                                                        //P Ascending offsets in the string of the start of each line followed by the end of the last line
+        final int  from,                                                        //P Index in cuts of the start of the first line
+        final int  to)                                                          //P Index in cuts of the end of the last line
        {float w = 0; int b = 0;
-        for(String s : Sections)                                                // Find maximum width and count good breaks
-         {if (s == null || s.length() == 0) continue;
-          final Section t = new Section(s);                                     // Add new section
+        for(int i = from; i < to; ++i)                                          // Find maximum width and count good breaks
+         {if (cuts[i] >= cuts[i+1]) continue;                                   // Empty section
+          final Section t = new Section(cuts[i], cuts[i+1]);                    // Add new section
           sections.push(t);                                                     // Save section
           if (t.width > w) w = t.width;                                         // Maximum width
           if (t.breaks)    b++;                                                 // Good breaks
@@ -618,200 +881,260 @@ public class Svg
        {return sections.size();
        }
 
-      float actualScale()                                                       // The actual scale to draw the layout
+      public float actualScale                                                  //M The actual scale to draw the layout
+       (final float aw,                                                         //P Width of the area in which the text is drawn
+        final float ah)                                                         //P Height of the area in which the text is drawn
        {final float
           w  = width,                                                           // Maximum line width
-          sx = drawArea.width() / w,                                            // Scaling to fit that width to target area
-          sy = drawArea.height()/size()/textSize,
+          sx = aw / w,                                                          // Scaling to fit that width to target area
+          sy = ah/size()/textSize,
           s = Math.min(sx, sy);                                                 // Scaling to fit that width to target area
         return s;
        }
 
-      float perceivedScale()                                                    // Increase the perceived scale to account for breaks
+      public float perceivedScale                                               //M Increase the perceived scale to account for breaks
+       (final float aw,                                                         //P Width of the area in which the text is drawn
+        final float ah)                                                         //P Height of the area in which the text is drawn
        {final float n = size(), b = breaks;
-        return (1f+(preferBreaksToSpacesFactor-1f)*b/n) * actualScale();
+        return (1f+(preferBreaksToSpacesFactor-1f)*b/n) * actualScale(aw, ah);
        }
      }
 
-    void addLayout                                                              //M Add lines other than the first line
-     (Stack<String> sections)                                                   //P Stack of text sections
-     {layouts.push(new Layout(sections));                                       // Create the new layout
+    private void addLayout                                                      //M Add a layout whose lines are delimited by offsets in the string
+     (final int[]cuts,                                                          //P Ascending offsets in the string of the start of each line followed by the end of the last line
+      final int  from,                                                          //P Index in cuts of the start of the first line
+      final int  to)                                                            //P Index in cuts of the end of the last line
+     {layouts.push(new Layout(cuts, from, to));                                 // Create the new layout
      }
 
-    void addLayout                                                              //M Add the first line
-     (String text)                                                              //P Text
-     {final Stack<String> s = new Stack<String>();
-      s.push(text);
-      addLayout(s);
-     }
-
-    public void setBlockColour                                                  // Draw a rectangle behind the block of text of this colour to provide more contrast.
-     (final int c)
-     {block.setColor(c);
-     }
-
-    private Text                                                                //c Create a text area
-      (final String Text,                                                       //P The text to  display
-       final float x,                                                           //P Fractional area in which to display the text - horizontal - left
-       final float y,                                                           //P Fractional area in which to display the text - horizontal - upper
-       final float 𝘅,                                                           //P Fractional area in which to display the text - horizontal - right
-       final float 𝘆,                                                           //P Fractional area in which to display the text - horizontal - lower
-       final float X,                                                           //P Fractional area in which to display the text - vertical - left
-       final float Y,                                                           //P Fractional area in which to display the text - vertical - upper
-       final float 𝗫,                                                           //P Fractional area in which to display the text - vertical - right
-       final float 𝗬,                                                           //P Fractional area in which to display the text - vertical - lower
-       final int   JustifyX,                                                    //P Horizontal justification in x per: L<com.appaapps.LayoutText>
-       final int   JustifyY,                                                    //P Horizontal justification in y per: L<com.appaapps.LayoutText>
-       final int   Justify𝗫,                                                    //P Vertical justification in x per: L<com.appaapps.LayoutText>
-       final int   Justify𝗬)                                                    //P Vertical justification in y per: L<com.appaapps.LayoutText>
-     {super(x, y, 𝘅, 𝘆, X, Y, 𝗫, 𝗬);                                            // Create the element containing the drawing of the text
-      this.text     = Text.trim();                                              // Text to display
-      this.justifyX = JustifyX;                                                 // Justification in X
-      this.justifyY = JustifyY;                                                 // Justification in Y
-      this.justify𝗫 = Justify𝗫;                                                 // Justification in X
-      this.justify𝗬 = Justify𝗬;                                                 // Justification in Y
-      paint.setTextSize(textSize);                                              // Unscaled text size
-      back.setTextSize(textSize);                                               // Back ground text size
-      back.setColor(textBackColour);                                            // Back ground text colour
-      back.setStrokeWidth(textStrokeWidth);                                     // Background of text stroke width
-      back.setStyle(Paint.Style.FILL_AND_STROKE);                               // Background of text stroke style
-      back.setAntiAlias(true);                                                  // Antialias
-      theme.p.setTextSize(textSize);                                            // Unscaled text size for theme paint must match the text size of the paint laying out the text
-      theme.q.setTextSize(textSize);                                            // Unscaled text size for theme paint must match the text size of the paint laying out the text
-      theme.r.setTextSize(textSize);                                            // Unscaled text size for theme paint must match the text size of the paint laying out the text
-      theme.p.setAntiAlias(true);                                               // Antialias
-      theme.q.setAntiAlias(true);                                               // Antialias
-      theme.r.setAntiAlias(true);                                               // Antialias
-      block.setColor(0);                                                        // Text is not normally blocked unless requested
-      block.setStrokeWidth(textStrokeWidth);                                    // Block outline
-      block.setStyle(Paint.Style.STROKE);                                       // Block stroke style
-      block.setAntiAlias(true);                                                 // Text is not normally blocked unless requested
-      paint.getTextPath(text, 0, text.length(), 0, 0, textPath);                // Layout text with foreground paint
-      textPath.computeBounds(textArea, true);                                   // Text bounds
+    private TextLayouts                                                         //c Lay out a string in every candidate way
+     (final String text,                                                        //P Trimmed text
+      final Paint  paint)                                                       //P Paint of the size and font to lay out the text in
+     {this.text = text;
+      final Path path = new Path();
+      paint.getTextPath(text, 0, text.length(), 0, 0, path);                    // Layout text with foreground paint
+      path.computeBounds(bounds, true);                                         // Text bounds
 
       numberOfChars = text.length();                                            // Length of text string
-      widthOfString = paint.measureText(text);                                  // Width of string minus any trailing advance
+      advance = new float[numberOfChars+1];                                     // Cumulative advance widths
+      if (true)                                                                 // Measure each character once
+       {final float[]w = new float[numberOfChars];                              // Advance width of each character
+        paint.getTextWidths(text, w);
+        for(int i = 0; i < numberOfChars; ++i) advance[i+1] = advance[i] + w[i];// Prefix sum of advance widths
+       }
+      widthOfString = advance[numberOfChars];                                   // Width of string when drawn on one line
 
+      final int[]cuts = new int[numberOfChars+2];                               // Line starts for the layout being built: at most one per character plus the start and the end of the text
       if (true)                                                                 //C Layout text as one line
-       {final Stack<String> s = new Stack<String>();                            // Awkward - but that is life with Java
-        s.push(text);
-        addLayout(s);
+       {cuts[0] = 0; cuts[1] = numberOfChars;
+        addLayout(cuts, 0, 1);
        }
 
       for(int lines = 1; lines < maxNumberOfDisplayLines; ++lines)              // Find maximum substring width for each line layout going forwards
        {final float lineWidth = widthOfString / (lines+1);                      // Minimum line width for this layout
         if (true)                                                               // Forwards
-         {final Stack<String> texts = new Stack<String>();                      // Text blocks
-          int s = 0;                                                            // Current start
+         {int n = 0, s = 0;                                                     // Number of lines, current start
+          cuts[n++] = s;
           for(int i = 0; i < numberOfChars; ++i)                                // Each character
-           {final String t = text.substring(s, i+1);                            // Current extent
-            final float  w = paint.measureText(t);                              // Measure width of current extent
-            if (w >= lineWidth)                                                 // End if line
-             {texts.push(t);                                                    // Text to draw on this line
-              s = i+1;                                                          // Start of next line
+           {if (advance[i+1] - advance[s] >= lineWidth)                         // End if line
+             {cuts[n++] = s = i+1;                                              // Start of next line
              }
            }
-          texts.push(text.substring(s));                                        // Any remaining text
-          addLayout(texts);                                                     // Save layout
+          cuts[n] = numberOfChars;                                              // Any remaining text
+          addLayout(cuts, 0, n);                                                // Save layout
          }
 
         if (false)                                                              // Backwards
-         {final Stack<String> texts = new Stack<String>();                      // Text blocks
-          int e = numberOfChars;                                                // Current end
+         {int n = cuts.length - 1, e = numberOfChars;                           // Lines are filled in from the end of the cuts, current end
+          cuts[n] = e;
           for(int i = numberOfChars-1; i >= 0; --i)                             // Each character
-           {final String t = text.substring(i, e);                              // Text to draw on this line
-            float w = paint.measureText(t);                                     // Width of current extent
-            if (w >= lineWidth)                                                 // End of line
-             {texts.insertElementAt(t, 0);                                      // Save text
-              e = i;                                                            // Start of next line
+           {if (advance[e] - advance[i] >= lineWidth)                           // End of line
+             {cuts[--n] = e = i;                                                // Start of next line
              }
            }
-          texts.insertElementAt(text.substring(0, e), 0);                       // Any remaining text
-          addLayout(texts);                                                     // Save layout
+          cuts[--n] = 0;                                                        // Any remaining text
+          addLayout(cuts, n, cuts.length - 1);                                  // Save layout
          }
 
         if (true)                                                               // Breaking at prior space going forwards
-         {final Stack<String> texts = new Stack<String>();                      // String sections to draw
-          int lastSpace = 0, s = 0;                                             // Last break point for remaining text
+         {int n = 0, lastSpace = 0, s = 0;                                      // Number of lines, last break point for remaining text, current start
+          cuts[n++] = s;
           for(int i = 0; i < numberOfChars; ++i)                                // Each character
            {if (text.charAt(i) == ' ') lastSpace = i;                           // Last space
-            final String t = text.substring(s, i+1);                            // Current string
-            if (paint.measureText(t) >= lineWidth)                              // Reached the end of the line
+            if (advance[i+1] - advance[s] >= lineWidth)                         // Reached the end of the line
              {if (lastSpace > 0)                                                // Last space available so break at it
-               {texts.push(text.substring(s, lastSpace+1));                     // Text with breaking space so it can be accounted for
-                s = lastSpace+1;                                                // Restart
+               {cuts[n++] = s = lastSpace+1;                                    // Text with breaking space so it can be accounted for
                 lastSpace = 0;
                }
               else                                                              // Break in middle of word regardless
-               {texts.push(text.substring(s, i+1));                             // Text regardless
-                s = i+1;                                                        // Restart
+               {cuts[n++] = s = i+1;                                            // Text regardless
                }
              }
            }
-          texts.push(text.substring(s));                                        // Any remaining text
-          addLayout(texts);
+          cuts[n] = numberOfChars;                                              // Any remaining text
+          addLayout(cuts, 0, n);
          }                                                                      // Add layout breaking at spaces
 
         if (false)                                                              // Breaking at prior space going backwards
-         {final Stack<String> texts = new Stack<String>();                      // String sections to draw
-          int lastSpace = 0, e = numberOfChars;                                 // Last break point for remaining text
+         {int n = cuts.length - 1, lastSpace = 0, e = numberOfChars;            // Lines are filled in from the end of the cuts, last break point for remaining text, current end
+          cuts[n] = e;
           for(int i = numberOfChars - 1; i >= 0; --i)                           // Each character backwards
            {if (text.charAt(i) == ' ') lastSpace = i;                           // Last space
-            final String t = text.substring(i, e);                              // Current string
-            if (paint.measureText(t) >= lineWidth)                              // Reached the end of the line
+            if (advance[e] - advance[i] >= lineWidth)                           // Reached the end of the line
              {if (lastSpace > 0)                                                // Last space available so break at it
-               {texts.insertElementAt(text.substring(lastSpace, e), 0);         // Text with breaking space so it can be accounted for
-                e = lastSpace;                                                  // Restart
+               {cuts[--n] = e = lastSpace;                                      // Text with breaking space so it can be accounted for
                 lastSpace = 0;
                }
               else                                                              // Break in middle of word regardless
-               {texts.insertElementAt(text.substring(i, e), 0);                 // Text regardless
-                e = i;                                                          // Restart
+               {cuts[--n] = e = i;                                              // Text regardless
                }
              }
            }
-          texts.insertElementAt(text.substring(0, e), 0);                       // Any remaining text
-          addLayout(texts);
+          cuts[--n] = 0;                                                        // Any remaining text
+          addLayout(cuts, n, cuts.length - 1);
          }                                                                      // Add layout breaking at spaces
        }
 
       if (true)                                                                 // Breaking at all combinations of spaces
-       {final Stack<String> texts = new Stack<String>();                        // String sections to draw
-        int lastBreak = 0;                                                      // Last break point for remaining text
+       {final int[]words = new int[numberOfChars+1];                            // Start of each word including its trailing space followed by the end of the text
+        int N = 0;                                                              // Number of words
         for(int i = 0; i < numberOfChars; ++i)                                  // Each character
-         {if (text.charAt(i) == ' ')                                            // Space
-           {final String t = text.substring(lastBreak, i+1);                    // Current string
-            texts.push(t);
-            lastBreak = i+1;                                                    // Restart
-           }
+         {if (text.charAt(i) == ' ') words[++N] = i+1;                          // Space ends a word
          }
-        texts.push(text.substring(lastBreak, numberOfChars));                   // Any remaining text
+        words[++N] = numberOfChars;                                             // Any remaining text
 
-        final int N = texts.size();                                             // Number of lines == number of break points - 1
         if (N > 1 && N < breakingLayoutTable.length)                            // We already handle one line adequately, otherwise consider layouts for when we have a breaking layout table
          {final int[][]layouts = breakingLayoutTable[N-1];                      // All the suitable layouts
           for(int i = 0; i < layouts.length; ++i)                               // Each suitable layout
            {final int[]layout = layouts[i];
-            int start = 0;
-            final Stack<String> Texts = new Stack<String>();                    // Text in lines as dictated by layout
+            int start = 0;                                                      // Words used so far
+            cuts[0] = 0;
             for(int j = 0; j < layout.length; ++j)                              // Each line
-             {String s = "";
-              for(int k = 0; k < layout[j]; ++k)
-               {s += texts.elementAt(start++);
-               }
-              Texts.push(s); s = "";                                            // Add line to lines
+             {start += layout[j];                                               // Words on this line
+              cuts[j+1] = words[start];                                         // End of line
              }
-            addLayout(Texts);
+            addLayout(cuts, 0, layout.length);
            }
          }
        }                                                                        // Add layout breaking at spaces
      }
 
-    protected void drawElementOnCanvas                                          //O=com.appaapps.Svg.Element2.drawElementOnCanvas Draw the text
+    public String toString()                                                    //M Describe as a string
+     {return "TextLayouts("+text+", layouts="+layouts.size()+")";
+     }
+   } //C TextLayouts
+
+  public class Text                                                             //C Draw some text
+    extends Element2                                                            //E So we can draw the text with a theme
+   {final protected String text;                                                // The text to display
+    final private int justifyX, justifyY, justify𝗫, justify𝗬;                   // Justification in x and y for each orientation
+    final private RectF
+      textArea  = new RectF(),                                                  // Preallocated rectangle for text bounds
+      textDraw  = new RectF(),                                                  // Preallocated rectangle for enclosing the current line of text
+      textUnion = new RectF();                                                  // Preallocated rectangle for smallest rectangle enclosing all the text
+    final private Paint
+      paint  = new Paint(),                                                     // Paint to calculate the text path
+      back   = new Paint(),                                                     // Paint outline background of text - this is drawn as a thin black line around each character to increase the contrast of each character
+      block  = new Paint();                                                     // Paint for a rectangle behind the text to increase the contrast of the text
+    final private TextLayouts candidates;                                       // The possible layouts shared with every other text element showing the same text
+    private TextLayouts.Layout bestLayout;                                      // The best layout for the draw area dimensions it was last chosen for
+    private float bestScale, bestWidth = -1, bestHeight = -1;                   // The scale of the best layout and the draw area dimensions it was chosen for
+    private Bitmap raster;                                                      // The composed text as last drawn or null
+    private Themes.Theme rasterTheme;                                           // The theme the raster was drawn with
+    private float rasterWidth, rasterHeight;                                    // The draw area dimensions the raster was drawn at
+    private int rasterBlock;                                                    // The block colour the raster was drawn with
+    private boolean rasterHnv;                                                  // The orientation the raster was drawn in
+
+    public void setBlockColour                                                  // Draw a rectangle behind the block of text of this colour to provide more contrast.
+     (final int c)
+     {if (block.getColor() != c) changed = true;
+      block.setColor(c);
+     }
+
+    private Text                                                                //c Create a text area
+      (final String Text,                                                       //P The text to  display
+       final float x,                                                           //P Fractional area in which to display the text - horizontal - left
+       final float y,                                                           //P Fractional area in which to display the text - horizontal - upper
+       final float 𝘅,                                                           //P Fractional area in which to display the text - horizontal - right
+       final float 𝘆,                                                           //P Fractional area in which to display the text - horizontal - lower
+       final float X,                                                           //P Fractional area in which to display the text - vertical - left
+       final float Y,                                                           //P Fractional area in which to display the text - vertical - upper
+       final float 𝗫,                                                           //P Fractional area in which to display the text - vertical - right
+       final float 𝗬,                                                           //P Fractional area in which to display the text - vertical - lower
+       final int   JustifyX,                                                    //P Horizontal justification in x per: L<com.appaapps.LayoutText>
+       final int   JustifyY,                                                    //P Horizontal justification in y per: L<com.appaapps.LayoutText>
+       final int   Justify𝗫,                                                    //P Vertical justification in x per: L<com.appaapps.LayoutText>
+       final int   Justify𝗬)                                                    //P Vertical justification in y per: L<com.appaapps.LayoutText>
+     {super(x, y, 𝘅, 𝘆, X, Y, 𝗫, 𝗬);                                            // Create the element containing the drawing of the text
+      this.text     = Text.trim();                                              // Text to display
+      this.justifyX = JustifyX;                                                 // Justification in X
+      this.justifyY = JustifyY;                                                 // Justification in Y
+      this.justify𝗫 = Justify𝗫;                                                 // Justification in X
+      this.justify𝗬 = Justify𝗬;                                                 // Justification in Y
+      paint.setTextSize(textSize);                                              // Unscaled text size
+      back.setTextSize(textSize);                                               // Back ground text size
+      back.setColor(textBackColour);                                            // Back ground text colour
+      back.setStrokeWidth(textStrokeWidth);                                     // Background of text stroke width
+      back.setStyle(Paint.Style.FILL_AND_STROKE);                               // Background of text stroke style
+      back.setAntiAlias(true);                                                  // Antialias
+      theme.p.setTextSize(textSize);                                            // Unscaled text size for theme paint must match the text size of the paint laying out the text
+      theme.q.setTextSize(textSize);                                            // Unscaled text size for theme paint must match the text size of the paint laying out the text
+      theme.r.setTextSize(textSize);                                            // Unscaled text size for theme paint must match the text size of the paint laying out the text
+      theme.p.setAntiAlias(true);                                               // Antialias
+      theme.q.setAntiAlias(true);                                               // Antialias
+      theme.r.setAntiAlias(true);                                               // Antialias
+      block.setColor(0);                                                        // Text is not normally blocked unless requested
+      block.setStrokeWidth(textStrokeWidth);                                    // Block outline
+      block.setStyle(Paint.Style.STROKE);                                       // Block stroke style
+      block.setAntiAlias(true);                                                 // Text is not normally blocked unless requested
+      candidates = TextLayouts.get(text, paint);                                // Lay out the text unless it has already been laid out
+      textArea.set(candidates.bounds);                                          // Text bounds
+     }
+
+    protected void drawElementOnCanvas                                          //O=com.appaapps.Svg.Element2.drawElementOnCanvas Draw the text from its raster if the text is not changing else directly
      (final Canvas canvas)                                                      //P Canvas to draw on
      {final boolean hnv = canvas.getWidth() > canvas.getHeight();               // Orientation
+      final float aw = drawArea.width(), ah = drawArea.height();                // Dimensions of draw area
+      if (!rasterizeText || animated() || theme.animated() ||                   // The composed text changes every frame
+          !(aw >= 1 && ah >= 1))                                                // Nothing to rasterize
+       {dropRaster();
+        drawText(canvas, hnv);
+        return;
+       }
 
-      if (block.getColor() != 0)                                                // Draw containing biox - ignore if the colour is zero
+      final int c = block.getColor();
+      if (raster != null && rasterTheme == theme && rasterWidth == aw &&        // The raster is up to date
+          rasterHeight == ah && rasterBlock == c && rasterHnv == hnv)
+       {textRasterHits.incrementAndGet();
+       }
+      else                                                                      // Draw the text into the raster
+       {textRasterMisses.incrementAndGet();
+        final int w = (int)Math.ceil(aw), h = (int)Math.ceil(ah);
+        if (raster == null || raster.getWidth() != w || raster.getHeight() != h)
+         {raster = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+         }
+        else raster.eraseColor(0);                                              // Reuse the raster of the same size
+        final Canvas r = new Canvas(raster);
+        r.translate(-drawArea.left, -drawArea.top);                             // Draw in the same coordinates as the canvas so that the theme shaders line up
+        drawText(r, hnv);
+        rasterTheme  = theme;
+        rasterWidth  = aw;
+        rasterHeight = ah;
+        rasterBlock  = c;
+        rasterHnv    = hnv;
+       }
+      canvas.drawBitmap(raster, drawArea.left, drawArea.top, null);
+     }
+
+    public void dropRaster()                                                    //M Drop the raster of this text so that it is drawn again when next needed
+     {raster      = null;
+      rasterTheme = null;
+     }
+
+    private void drawText                                                       //M Draw the text line by line
+     (final Canvas  canvas,                                                     //P Canvas to draw on
+      final boolean hnv)                                                        //P Orientation of the display canvas
+     {if (block.getColor() != 0)                                                // Draw containing biox - ignore if the colour is zero
        {canvas.save();
         canvas.clipRect(drawArea);                                              // Clip box
         canvas.drawRect(drawArea, block);                                       // Draw block
@@ -826,19 +1149,18 @@ public class Svg
         Aw = textArea.width(), Ah = textArea.height(),                          // Dimensions of text
         aw = drawArea.width(), ah = drawArea.height();                          // Dimensions of draw area
 
-//say("AAAA ", text);
-      Layout L = null;                                                          // Best layout
-      for(Layout l : layouts)                                                   // Find the layout that gives the greatest scaling  there is always at least one = a single line
-       {if (L == null || l.perceivedScale() > L.perceivedScale())               // Acceptable scale with allowance for better breakage
-         {//say("BBBB ", l);
-          L = l;
-         }
+      if (aw != bestWidth || ah != bestHeight)                                  // The draw area has changed since the layout was last chosen
+       {bestLayout = animated() ?                                               // The draw area changes every frame while animated
+          candidates.bestQuantized(aw, ah) : candidates.best(aw, ah);
+        bestScale  = bestLayout.actualScale(aw, ah);                            // Maximum scale factor we can use
+        bestWidth  = aw;
+        bestHeight = ah;
        }
 
-      if (L != null)                                                            // The single line at worst
-       {final Layout layout = L;                                                // The best layout
+      if (bestLayout != null)                                                   // The single line at worst
+       {final TextLayouts.Layout layout = bestLayout;                           // The best layout
         final int numberOfLines = layout.size();                                // Number of lines to display
-        final float scale = layout.actualScale();                               // Maximum scale factor we can use
+        final float scale = bestScale;                                          // Maximum scale factor we can use
 //say("CCCC ", layout);
 
         canvas.save();
@@ -850,17 +1172,17 @@ public class Svg
         p.setTextSize(textSize); q.setTextSize(textSize);                       // Set text size
 
         for(int i = 0; i < numberOfLines; ++i)                                  // Draw each line
-         {final Layout.Section s = layout.sections.elementAt(i);                // Text section
-          final String t = s.text;                                              // Text to draw
+         {final TextLayouts.Layout.Section s = layout.sections.elementAt(i);    // Text section
+          final int a = s.start, b = s.end;                                     // Text to draw
           final float
             w  = s.width,                                                       // Text width
             lx = (aw / scale - w), ly = (ah / scale / numberOfLines - textSize),// Left over space
             jx = (jX < 0 ? 0 : jX > 0 ? lx : lx / 2),                           // Justify in X
             jy = (jY < 0 ? 0 : jY > 0 ? ly : ly / 2) - paint.descent();         // Justify in Y with allowance for font descent
           canvas.translate(0, textSize);                                        // Down one line
-          canvas.drawText(t, jx, jy, back);                                     // Draw text outline background
-          canvas.drawText(t, jx, jy, p);                                        // Draw text with first paint
-          canvas.drawText(t, jx, jy, q);                                        // Draw text with second paint
+          canvas.drawText(text, a, b, jx, jy, back);                            // Draw text outline background
+          canvas.drawText(text, a, b, jx, jy, p);                               // Draw text with first paint
+          canvas.drawText(text, a, b, jx, jy, q);                               // Draw text with second paint
          }
         canvas.restore();
        }
@@ -980,7 +1302,7 @@ public class Svg
       phase     = Math.PI * random.nextDouble(),                                // Bitmap display phase offset
       startTime = Time.secs(),                                                  // Number of seconds for this image to glide across its display area, start time for this animation
       glideTime;                                                                // Number of seconds for this image to glide across its display area, start time for this animation
-    private final PhotoBytes.Draw bitmap;                                       // Decompress the bitmap thread
+    private final PhotoBytes.Draw bitmap;                                       // Decompress the bitmap on the decode executor
     private PointF pointOfInterest = null;                                      // Point of interest represented as fractional coordinates
 
     private Image                                                               //c Fraction coordinates of corners of drawing area
@@ -1004,7 +1326,9 @@ public class Svg
        }
       bitmap = photoBytes.prepare                                               // Unpack bytes to create bitmap
        (picture, Maths.roundUpToPowerOfTwo(inverseFractionalArea));
-      bitmap.start();
+      if (decodeVisibleTilesOnly) bitmap.visibleOnly();                         // Decode tiles as they come into view
+      if (progressiveImages)      bitmap.progressive();                         // Preview first
+      bitmap.start();                                                           // Queue the decode on the decode executor
       prepare.push(bitmap);                                                     // So we can wait for all the images to be prepared before using the svg
      }
 
@@ -1020,7 +1344,7 @@ public class Svg
       final float
         pw = picture.width(),  dw = drawArea.width(),                           // Width of picture and draw area
         ph = picture.height(), dh = drawArea.height(),                          // Height of picture and draw area
-        sn = (float)Math.sin((Time.secs() - startTime) /                        // Sine of time
+        sn = (float)Math.sin((frameTime - startTime) /                          // Sine of time
                              glideTime * Math.PI + phase),
         sf = sn * sn,                                                           // Sine squared for smooth lift off, hold and return
         px = 𝗶 ? i.position.x : 𝗽 ? pointOfInterest.x : sf,                     // Position adjustment in x
@@ -1068,6 +1392,7 @@ public class Svg
          }
        }
 
+      bitmap.magnify(mg);                                                       // Refine the visible tiles while magnified
       bitmap.draw(canvas);                                                      // Draw photo
       canvas.restore();
      }
@@ -1084,10 +1409,16 @@ public class Svg
      {pointOfInterest.x = fractionClamp(pointOfInterest.x);
       pointOfInterest.y = fractionClamp(pointOfInterest.y);
       this.pointOfInterest = pointOfInterest;
+      changed = true;
      }
 
     public void resetPointOfInterest()                                          //M Reset the point of interest
      {this.pointOfInterest = null;
+      changed = true;
+     }
+
+    protected boolean moving()                                                  //O=com.appaapps.Svg.Element.moving Moving if gliding or if the bitmaps are still being prepared
+     {return super.moving() || pointOfInterest == null || !bitmap.isPrepared();
      }
 
     class Mover extends Thread                                                  //C Image move request
@@ -1218,10 +1549,12 @@ public class Svg
    (final Image image)                                                          //P Image to move
    {imageMover = image.new Mover();                                             // Set the image mover active
     imageMover.start();                                                         // Run the image mover active
+    requestRedraw();
    }
 
   public void removeImageMover()                                                //M Remove the current image mover
    {imageMover = null;                                                          // Remove the image mover
+    requestRedraw();
    }
 
   public class CompassRose                                                      //C Draw an compass rose command selector
@@ -1479,12 +1812,14 @@ public class Svg
     updateDrag(x, y);                                                           // Update values dependent on drag position
     pressedElement  = findContainingElement(x, y);                              // Pressed element                                    // Find the element under the press
     releasedElement = null;                                                     // Released element
+    requestRedraw();                                                            // Show the touch immediately even if the display is idle
    }
 
   public void drag                                                              //M Update the current touch position
    (final float x,                                                              //P X coordinate of touch
     final float y)                                                              //P Y coordinate of touch
    {updateDrag(x, y);                                                           // Update values dependent on drag position
+    requestRedraw();
    }
 
   public boolean tapNotTouch()                                                  // Fast enough to be a tap
@@ -1501,6 +1836,7 @@ public class Svg
    {updateDrag(x, y);                                                           // Update values dependent on drag position
     releasedElement = findContainingElement(x, y);                              // Released element
     pressTime = null;                                                           // No longer pressing
+    requestRedraw();                                                            // Remove the compass rose
     final boolean                                                               // Motion characteristics
       moved = movedEnoughToBeASwipe(),                                          // Moved enough to be a swipe
       quick = tapNotTouch();                                                    // Fast enough to be a tap
@@ -1587,7 +1923,11 @@ public class Svg
   private Thread startThread                                                    //M Start a thread  to run a thread's run() method
    (final Runnable r)                                                           //P Runnable to run
    {if (r != null)                                                              // Thread has been supplied
-     {final Thread t = new Thread(r);                                           // Create a new thread
+     {final Thread t = new Thread()                                             // Create a new thread
+       {public void run()                                                       //O=java.lang.Thread.run Run the action then redraw to show any changes it made
+         {try {r.run();} finally {requestRedraw();}
+         }
+       };
       t.start();                                                                // Start the new thread
       return t;                                                                 // Return the new thread
      }
@@ -1613,6 +1953,84 @@ public class Svg
     s.Rectangle(0, 0, 100, 100);
     s.Text("H", 0, 0, 100, 100, 0, 0);
     //s.Image(testImage(), 0, 0, 100, 100);
+
+    final Text t = s.Text("The quick brown fox jumps over the lazy dog", 0, 0, 1, 1, 0, 0);
+    final TextLayouts T = t.candidates;
+    assert T.layouts.firstElement().size() == 1;                                // The whole text on one line
+    assert T.widthOfString == t.paint.measureText(t.text);                      // Cumulative advance widths agree with measuring the whole string
+    for(TextLayouts.Layout l : T.layouts)                                       // Each section is measured from the cumulative advance widths without being extracted
+     {for(TextLayouts.Layout.Section c : l.sections)
+       {assert Math.abs(c.width - t.paint.measureText(t.text.substring(c.start, c.end))) < 0.01f;
+        assert c.start == c.end || t.text.charAt(c.start) != ' ' && t.text.charAt(c.end-1) != ' ';
+       }
+     }
+    assert s.Text(" The quick brown fox jumps over the lazy dog ",
+                  0, 0, 1, 1, 0, 0).candidates == T;                            // The layouts are shared with other text elements showing the same text
+
+    final Canvas c = new Canvas();                                              // Choose the best layout once per draw area
+    rasterizeText = false;
+    t.drawElement(c);
+    assert t.bestLayout == T.best(t.drawArea.width(), t.drawArea.height());
+    t.bestScale = 0;
+    t.drawElement(c);
+    assert t.bestScale == 0;                                                    // Not chosen again while the draw area is unchanged
+    assert T.bestQuantized(200, 100) == T.bestQuantized(201, 100);              // Within the same step of aspect ratio
+    assert T.bestQuantized(256, 128) == T.best(256, 128);                       // Exact at the center of each step
+
+    rasterizeText = true;                                                       // Rasterize text drawn with a theme that is not animated
+    final long h = textRasterHits.get(), m = textRasterMisses.get();
+    t.drawElement(c); t.drawElement(c);
+    assert textRasterMisses.get() == m + 1 && textRasterHits.get() == h + 1;    // Drawn into the raster once then reused
+    t.setBlockColour(0xffffffff);
+    t.drawElement(c);
+    assert textRasterMisses.get() == m + 2;                                     // Drawn again when highlighted
+    t.setTheme(themes.waves());
+    t.drawElement(c);
+    assert t.raster == null && textRasterMisses.get() == m + 2;                 // Animated themes are drawn directly
+
+    final int n = TextLayouts.size();
+    final Stack<String> w = new Stack<String>();
+    w.push("Not yet laid out"); w.push(null); w.push(" H ");
+    try {TextLayouts.warm(w).join();} catch(InterruptedException e) {}
+    assert TextLayouts.size() == n + 1;                                         // Laid out in the background, nulls ignored, texts trimmed
+
+    final Svg i = new Svg();                                                    // Idle unless something is moving
+    final Text it = i.Text("Idle", 0, 0, 1, 1, 0, 0);
+    assert !i.animating();                                                      // Text in a static theme
+    final long r = redrawRequests();
+    i.setTheme(themes.waves());
+    assert i.animating();                                                       // Waves move
+    assert awaitRedrawRequest(r, 0);                                            // Changing the theme requests a redraw
+    i.setTheme(themes.tartan());
+    assert !i.animating();
+    i.press(10, 10);
+    assert i.animating();                                                       // Touch in progress
+    i.release(10, 10);
+    assert !i.animating();
+    final long q = redrawRequests();
+    assert !awaitRedrawRequest(q, 10);                                          // Nothing requested
+    it.setVisible(false);
+    assert awaitRedrawRequest(q, 10);
+
+    final Svg d = new Svg();                                                    // Only the elements that might paint in the changed region are drawn
+    final Rectangle da = d.Rectangle(0,    0,    0.2f, 0.2f);
+    final Rectangle db = d.Rectangle(0.6f, 0.6f, 1,    1);
+    final Rect region = new Rect();
+    final int W = c.getWidth(), H = c.getHeight();
+    assert d.dirtyRegion(W, H, 1, region) && region.width() == W;               // Drawn in full the first time
+    d.draw(c, 1, null);
+    assert d.elementsDrawn == 2;
+    assert !d.dirtyRegion(W, H, 2, region);                                     // Nothing has changed
+    db.setTheme(themes.tartan());
+    assert d.dirtyRegion(W, H, 3, region);
+    assert region.left == 60 - dirtyMargin && region.right == W;                // The area of the changed element
+    d.draw(c, 3, region);
+    assert d.elementsDrawn == 3;                                                // The unchanged element was not drawn
+    db.setVisible(false);
+    assert d.dirtyRegion(W, H, 4, region) && region.left == 60 - dirtyMargin;   // Its old area must be cleared
+    d.draw(c, 4, region);
+    assert d.elementsDrawn == 3 && db.drawn.isEmpty();
+    assert !d.dirtyRegion(W, H, 5, region);
    }
 
   private static void lll(Object...O) {final StringBuilder b = new StringBuilder(); for(Object o: O) b.append(o.toString()); System.err.print(b.toString()+"\n");}
@@ -18,6 +18,8 @@ public class Themes
   final Shader.TileMode mirror = Shader.TileMode.MIRROR;                        // Mirror mode for linear gradients
   final Matrix matrix = new Matrix();                                           // Matrix for rotations
   final Bitmap chessBitmap = chessBitmap();                                     // Bitmap used to draw the chess theme
+  public static float textureRate = 10;                                         // Times per second that the texture of an animated theme is rendered
+  public static int   textureSize = 128;                                        // Width and height in pixels of the texture of an animated theme
 
   public Theme fromName                                                         //M Make a theme from its name - this should only be used when receiving a theme name as it is inefficient
    (String  name)                                                               //P Name of the theme to make
@@ -76,9 +78,32 @@ public class Themes
       q = new Paint(), Q = new Paint(),                                         // Second paint to be set background - text
       r = new Paint(), R = new Paint();                                         // Third paint to be set  background - text
 
-    abstract public void set                                                    //m Set the paints needed to draw a theme
+    private float setWidth = -1, setHeight = -1;                                // The size of the thing the paints were last set for
+    public int updates = 0;                                                     // Number of times the paints have been updated
+    protected double time;                                                      // Time in seconds of the frame the paints are being set for
+
+    public void set                                                             //M Set the paints needed to draw a theme at the current time
+     (Canvas canvas,                                                            //P Canvas so that we can get the size of the drawing area
+      final float w,                                                            //P Approximate width of thing to be drawn
+      final float h)                                                            //P Approximate height of thing to be drawn
+     {set(canvas, w, h, Time.secs());
+     }
+
+    public void set                                                             //M Set the paints needed to draw a theme at the time of a frame unless they are already set for a thing of this size and the theme is not animated
      (Canvas canvas,                                                            //P Canvas so that we can get the size of the drawing area
       final float w,                                                            //P Approximate width of thing to be drawn
+      final float h,                                                            //P Approximate height of thing to be drawn
+      final double time)                                                        //P Time in seconds of the frame being drawn
+     {if (!animated() && w == setWidth && h == setHeight) return;               // The paints are already set
+      this.time = time;
+      setWidth  = w;
+      setHeight = h;
+      ++updates;
+      update(w, h);
+     }
+
+    abstract protected void update                                              //m Override to update the paints needed to draw a theme - called only when they might have changed and so should not allocate
+     (final float w,                                                            //P Approximate width of thing to be drawn
       final float h);                                                           //P Approximate height of thing to be drawn
 
     abstract public Theme make();                                               //M Override to make a new instance of this theme
@@ -93,6 +118,10 @@ public class Themes
      }
 
     abstract public String name();                                              //M Name of theme as a string
+
+    public boolean animated()                                                   //M Whether set() changes the paints over time rather than only with the size of the thing drawn
+     {return false;
+     }
    } //C Pattern
 
   public class Waves                                                            //C Create a waves paint gradient
@@ -106,45 +135,122 @@ public class Themes
       c2 = colours[1],                                                          // Ditto
       C1 = ColoursTransformed.opposite(c1),                                     // Opposing colour
       C2 = ColoursTransformed.opposite(c2);                                     // Ditto
+    private final LinearGradient                                                // Gradients along the unit vectors in x and y which are stretched and rotated into position by their local matrices rather than being created again on each frame
+      g1 = new LinearGradient(0, 0, 1, 0, c1, C1, mirror),
+      g2 = new LinearGradient(0, 0, 0, 1, c2, C2, mirror);
+
+    private final Texture texture;                                              // The pattern of animated waves rendered at a low rate and shared by every copy made of this theme, else null as static waves are set only when the size changes
+    private final BitmapShader s1, s2;                                          // Shaders over the texture reused on every frame, else null for static waves
+    private final float dx = (float)Math.random() * textureSize,                // Offset into the shared texture to provide variation between copies of this theme
+                        dy = (float)Math.random() * textureSize;
 
     private Waves                                                               //C Create a waves paint gradient
      (final float speed)                                                        //P Speed relative to 1
+     {this(speed, null);
+     }
+
+    private Waves                                                               //C Create a waves paint gradient sharing the texture of another animated waves theme
+     (final float speed,                                                        //P Speed relative to 1
+      final Waves share)                                                        //P Theme whose texture is to be shared or null to create a new texture if the waves move
      {super(speed);                                                             // Save the speed
       x = new Fourier(speed);                                                   // Corners
       y = new Fourier(speed);
       X = new Fourier(speed);
       Y = new Fourier(speed);
       a = new Fourier(speed);                                                   // Orientation
+      texture = share != null ? share.texture : speed != 0 ? new Texture() : null;
+      s1 = texture != null ? new BitmapShader(texture.one, mirror, mirror) : null;
+      s2 = texture != null ? new BitmapShader(texture.two, mirror, mirror) : null;
+      if (texture != null) {p.setShader(s1); q.setShader(s2);}
+      else                 {p.setShader(g1); q.setShader(g2);}
+      p.setAntiAlias(true);
+      p.setDither(true);
+      q.setAntiAlias(true);
+      q.setDither(true);
+      P.set(p); Q.set(q); R.set(r);                                             // The text paints share the shaders so they follow the updates to the local matrices
      }
 
     public Waves make()                                                         //O=com.appappps.Gradients.Pattern.make Make a new instance of this theme thus providing variation within a common theme
-     {return new Waves(speed);
+     {return new Waves(speed, texture != null ? this : null);
      }
 
-    public void set                                                             //O=com.appaapps.Gradients.set Update the latest state of the theme to allow time evolution
-     (Canvas canvas,                                                            //P Canvas so that we can get the size of the drawing area
-      final float w,                                                            //P Approximate width in pixels of the thing to be drawn
+    public int textureRefreshes()                                               //M Number of times the texture of this animated theme has been rendered
+     {return texture != null ? texture.refreshes : 0;
+     }
+
+    protected void update                                                       //O=com.appaapps.Themes.Theme.update Update the latest state of the theme to allow time evolution
+     (final float w,                                                            //P Approximate width in pixels of the thing to be drawn
       final float h)                                                            //P Approximate height in pixels of the thing to be drawn
-     {final LinearGradient
-        g1 = new LinearGradient(x.get()*w, 0, X.get()*w, 0, c1, C1, mirror),
-        g2 = new LinearGradient(0, y.get()*h, 0, Y.get()*h, c2, C2, mirror);    // We could add a small offset in x at one corner to get a spiral effect at full width or zero width - I originally did this by accident and it took ahes to find woiut why the patern was rotating without any rotation supplied
-      final Matrix matrix = new Matrix();
-      matrix.reset();
-      final float A = a.get(), angle = A * 360;
+     {if (texture != null)                                                      // Animated: refresh the shared texture if it is stale then stretch it over the thing to be drawn
+       {texture.refresh(time);                                                  // The time of the frame being drawn by this copy as the theme that owns the texture might never be set itself
+        matrix.setTranslate(dx, dy);
+        matrix.postScale(w / textureSize, h / textureSize);
+        s1.setLocalMatrix(matrix);
+        s2.setLocalMatrix(matrix);
+        return;
+       }
+      wave(w, h, time);
+     }
+
+    private void wave                                                           //M Position the gradients over a thing of the specified size at the specified time
+     (final float  w,                                                           //P Width in pixels
+      final float  h,                                                           //P Height in pixels
+      final double t)                                                           //P Time in seconds
+     {final float A = a.get(t), angle = A * 360;
+      position(g1, true,  x.get(t)*w, X.get(t)*w, angle);                       // We could add a small offset in x at one corner to get a spiral effect at full width or zero width - I originally did this by accident and it took ahes to find woiut why the patern was rotating without any rotation supplied
+      position(g2, false, y.get(t)*h, Y.get(t)*h, angle);
+     }
+
+    private class Texture                                                       //C The gradients of animated waves rendered into two small bitmaps no more often than textureRate times a second
+     {final Bitmap
+        one = Bitmap.createBitmap(textureSize, textureSize, Bitmap.Config.ARGB_8888),
+        two = Bitmap.createBitmap(textureSize, textureSize, Bitmap.Config.ARGB_8888);
+      final Canvas c1 = new Canvas(one), c2 = new Canvas(two);                  // Canvases over the bitmaps
+      final Paint  p1 = new Paint(),     p2 = new Paint();                      // Paints carrying the gradients
+      double refreshed = Double.NEGATIVE_INFINITY;                              // Time in seconds of the last refresh
+      int refreshes = 0;                                                        // Number of refreshes
+
+      Texture()                                                                 //c Create the texture of the enclosing waves theme
+       {p1.setShader(g1); p1.setDither(true);
+        p2.setShader(g2); p2.setDither(true);
+       }
+
+      void refresh                                                              //M Render the gradients again if the texture is older than the refresh period
+       (final double t)                                                         //P Time in seconds of the frame being drawn
+       {if (t - refreshed < 1d / textureRate) return;
+        refreshed = t;
+        ++refreshes;
+        wave(textureSize, textureSize, t);
+        one.eraseColor(0); c1.drawPaint(p1);
+        two.eraseColor(0); c2.drawPaint(p2);
+       }
+     } //C Texture
+
+    private void position                                                       //M Stretch a unit gradient between two points along its axis then rotate it about the origin
+     (final LinearGradient g,                                                   //P Gradient
+      final boolean      horizontal,                                            //P Whether the gradient lies along x rather than y
+      final float        from,                                                  //P Start of the gradient along its axis
+      final float        to,                                                    //P End of the gradient along its axis
+      final float        angle)                                                 //P Rotation in degrees
+     {final float d = to - from, e = 1e-3f,                                     // The local matrix must stay invertible
+        s = Math.abs(d) >= e ? d : d < 0 ? -e : e;
+      if (horizontal)
+       {matrix.setScale(s, 1);
+        matrix.postTranslate(from, 0);
+       }
+      else
+       {matrix.setScale(1, s);
+        matrix.postTranslate(0, from);
+       }
       matrix.postRotate(angle);
-      g1.setLocalMatrix(matrix);
-      g2.setLocalMatrix(matrix);
-      p.setShader(g1);
-      p.setAntiAlias(true);
-      p.setDither(true);
-      q.setShader(g2);
-      q.setAntiAlias(true);
-      q.setDither(true);
-      P.set(p); Q.set(q); R.set(r);
+      g.setLocalMatrix(matrix);                                                 // The shader copies the matrix so the matrix can be reused
      }
     public String name()                                                        //O=com.appappps.Gradients.Pattern.name Name of the theme
      {return "waves";
      }
+    public boolean animated()                                                   //O=com.appaapps.Themes.Theme.animated The waves move unless the speed is zero
+     {return speed != 0;
+     }
    } //C Waves
 
   public class Tartan                                                           //C Create a tartan paint gradient as a static wave
@@ -159,26 +265,27 @@ public class Themes
 
   public class Chess                                                            //C Create a chess board theme in black and white
     extends Theme
-   {private Chess                                                               //C Create a chess board paint gradient
+   {private final BitmapShader g =                                              // The shader is the same on every frame
+      new BitmapShader(chessBitmap, mirror, mirror);
+
+    private Chess                                                               //C Create a chess board paint gradient
      (final float speed)                                                        //P Speed relative to 1
      {super(speed);                                                             // Save the speed
+      p.setShader(g);
+      p.setAntiAlias(true);
+      p.setDither(true);
+      q.setColor(0);
+      P.set(p); Q.set(q); R.set(r);
      }
 
     public Chess make()                                                         //O=com.appappps.Gradients.Pattern.make Make a new instance of this theme thus providing variation within a common theme
      {return new Chess(speed);
      }
 
-    public void set                                                             //O=com.appaapps.Gradients.set Set the two paints needed to draw the tartan gradient
-     (Canvas canvas,                                                            //P Canvas so that we can get the size of the drawing area
-      final float w,                                                            //P Approximate width in pixels of the thing to be drawn
+    protected void update                                                       //O=com.appaapps.Themes.Theme.update The paints were set when the theme was created and do not depend on the size of the thing drawn
+     (final float w,                                                            //P Approximate width in pixels of the thing to be drawn
       final float h)                                                            //P Approximate height in pixels of the thing to be drawn
-     {final BitmapShader g = new BitmapShader(chessBitmap, mirror, mirror);     // Create the gradient
-      p.setShader(g);
-      p.setAntiAlias(true);
-      p.setDither(true);
-      q.setColor(0);
-      P.set(p); Q.set(q); R.set(r);
-     }
+     {}
     public String name()                                                        //O=com.appappps.Gradients.Pattern.name Name of the theme
      {return "chess";
      }
@@ -189,9 +296,8 @@ public class Themes
    {final int
       fore,                                                                     // Foreground colour
       back;                                                                     // Background colout
-     public void set                                                            //O=com.appaapps.Gradients.set Set the two paints needed to draw the theme
-     (Canvas canvas,                                                            //P Canvas so that we can get the size of the drawing area
-      final float w,                                                            //P Approximate width in pixels of the thing to be drawn
+    protected void update                                                       //O=com.appaapps.Themes.Theme.update Set the two paints needed to draw the theme
+     (final float w,                                                            //P Approximate width in pixels of the thing to be drawn
       final float h)                                                            //P Approximate height in pixels of the thing to be drawn
      {final float width = Math.max(Math.min(16, (w+h)/16), 2);                  // Text outline
 
@@ -299,7 +405,41 @@ public class Themes
    }
 
   public static void main(String[] args)
-   {System.err.println("Hello World");
+   {final Themes t = new Themes();
+    final Theme tartan = t.tartan(), waves = t.waves(), white = t.white();
+    for(int i = 0; i < 3; ++i)                                                  // Several frames of one element
+     {tartan.set(null, 100, 50);
+      waves .set(null, 100, 50);
+      white .set(null, 100, 50);
+     }
+    assert tartan.updates == 1;                                                 // Tartan does not move so its paints are set once per size
+    assert white .updates == 1;
+    assert waves .updates == 3;                                                 // Waves move so their texture is positioned on every frame
+    assert ((Waves)waves).textureRefreshes() == 1;                              // but rendered only at the texture rate
+    final Waves copy = ((Waves)waves).make();
+    copy.set(null, 20, 30);
+    assert ((Waves)waves).textureRefreshes() == 1;                              // Copies share the texture
+    assert copy.textureRefreshes() == 1;
+    assert ((Waves)tartan).textureRefreshes() == 0;                             // Static waves have no texture
+    final Waves w = t.waves();                                                  // Frames at explicit times
+    w.set(null, 100, 50, 1000.00);
+    w.set(null, 100, 50, 1000.05);
+    assert w.textureRefreshes() == 1;                                           // Within one refresh period of the last frame
+    w.set(null, 100, 50, 1000.10);
+    assert w.textureRefreshes() == 2;
+    final Waves prototype = t.waves();                                          // Elements draw copies of a theme that is never set itself
+    final Waves e1 = prototype.make(), e2 = prototype.make();
+    for(int i = 0; i < 40; ++i)                                                 // Five seconds of frames a little slower than the texture rate
+     {final double f = 2000 + i / 8d;
+      e1.set(null, 100, 50, f);
+      e2.set(null, 40,  80, f);
+     }
+    assert prototype.updates == 0;
+    assert e1.textureRefreshes() == 40;                                         // Refreshed once per period from the time of the frames drawn by the copies
+    assert e2.textureRefreshes() == 40;                                         // Shared
+    tartan.set(null, 50, 100);
+    assert tartan.updates == 2;                                                 // Set again for a new size
+    System.err.println("Hello World");
    }
 
   static void say(Object...O) {Say.say(O);}
@@ -17,6 +17,7 @@ sub make($)
  }
 
 my @files = qw(
+android/AssetManager
 android/BitmapDrawable
 android/BitmapFactory
 android/Bitmap
@@ -33,6 +34,7 @@ android/PointF
 android/RectF
 android/Rect
 android/SystemClock
+android/Typeface
 themes/Themes
 midi/MidiTracks
 sound/Midi
@@ -40,6 +42,11 @@ sound/Speech
 say/Say
 time/Time
 svg/Svg
+photoBytes/PhotoBytes
+appState/AppState
+benchmark/PhotoBenchmark
+fourier/Fourier
+benchmark/FourierBenchmark
 );
 
 make($_) for @files;
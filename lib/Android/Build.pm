@@ -500,7 +500,7 @@ sub make
 
   if (1)                                                                        # Package
    {zzz
-     ("$aapt package --no-crunch -f  -0 apk -M $manifest".
+     ("$aapt package --no-crunch -f  -0 apk -0 pack -M $manifest".
       " -S $binRes  -S $res -I $androidJar".
       " -F $api".
       " --generate-dependencies");